@@ -1,6 +1,12 @@
 CREATE DATABASE IF NOT EXISTS QLKH;
 
 USE QLKH;
+DROP TABLE IF EXISTS `document_pages`;
+DROP TABLE IF EXISTS `ocr_result_cache`;
+DROP TABLE IF EXISTS `ingestion_job_files`;
+DROP TABLE IF EXISTS `ingestion_jobs`;
+DROP TABLE IF EXISTS `document_fingerprints`;
+DROP TABLE IF EXISTS `token_dictionary`;
 DROP TABLE IF EXISTS `document_authors`;
 DROP TABLE IF EXISTS `documents`;
 DROP TABLE IF EXISTS `hd`;
@@ -42,7 +48,9 @@ CREATE TABLE documents (
     file_name VARCHAR(255) NOT NULL,
     file_path TEXT NOT NULL,
     extracted_text LONGTEXT,
-    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+    content_hash CHAR(64),
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    UNIQUE KEY `IDX_documents_content_hash` (`content_hash`)
 )ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_uca1400_ai_ci;
 -- Tạo bảng liên kết document_authors
 CREATE TABLE IF NOT EXISTS `document_authors` (
@@ -52,4 +60,83 @@ CREATE TABLE IF NOT EXISTS `document_authors` (
   CONSTRAINT `FK_document` FOREIGN KEY (`document_id`) REFERENCES `documents` (`id`) ON DELETE CASCADE,
   CONSTRAINT `FK_customer` FOREIGN KEY (`khid`) REFERENCES `kh` (`khid`) ON DELETE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_uca1400_ai_ci;
+-- Tạo bảng document_fingerprints (fingerprint đã chuẩn hóa dùng cho so sánh văn bản)
+CREATE TABLE IF NOT EXISTS `document_fingerprints` (
+  `document_id` INT NOT NULL,
+  `fingerprint_version` INT NOT NULL,
+  `raw_word_count` INT NOT NULL,
+  `token_ids` LONGBLOB NOT NULL,
+  `token_set` LONGBLOB NOT NULL,
+  `shingle_hashes` LONGBLOB NOT NULL,
+  `created_at` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`document_id`),
+  CONSTRAINT `FK_fingerprint_document` FOREIGN KEY (`document_id`) REFERENCES `documents` (`id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_uca1400_ai_ci;
+
+-- Tạo bảng token_dictionary (từ điển từ đã chuẩn hóa sang id int dùng chung cho mọi fingerprint)
+CREATE TABLE IF NOT EXISTS `token_dictionary` (
+  `token_id` INT NOT NULL,
+  `token_hash` BIGINT NOT NULL,
+  `token` TEXT NOT NULL,
+  PRIMARY KEY (`token_id`),
+  UNIQUE KEY `UK_token_dictionary_hash` (`token_hash`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_uca1400_ai_ci;
+
+-- Tạo bảng ingestion_jobs (hàng đợi nhập tài liệu: mỗi lần tải lên là một công việc OCR chạy nền)
+CREATE TABLE IF NOT EXISTS `ingestion_jobs` (
+  `id` BIGINT AUTO_INCREMENT PRIMARY KEY,
+  `status` VARCHAR(16) NOT NULL,
+  `author_ids` TEXT,
+  `error` TEXT,
+  `created_at` DATETIME(6) NOT NULL,
+  `started_at` DATETIME(6),
+  `finished_at` DATETIME(6),
+  KEY `IDX_ingestion_jobs_status` (`status`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_uca1400_ai_ci;
 
+-- Tạo bảng ingestion_job_files (trạng thái từng file của công việc nhập tài liệu)
+CREATE TABLE IF NOT EXISTS `ingestion_job_files` (
+  `id` BIGINT AUTO_INCREMENT PRIMARY KEY,
+  `job_id` BIGINT NOT NULL,
+  `position` INT NOT NULL,
+  `file_name` VARCHAR(255) NOT NULL,
+  `stored_path` TEXT,
+  `file_size` BIGINT,
+  `content_hash` CHAR(64),
+  `total_pages` INT,
+  `status` VARCHAR(16) NOT NULL,
+  `attempts` INT NOT NULL DEFAULT 0,
+  `document_id` INT,
+  `deduplicated` BOOLEAN NOT NULL DEFAULT FALSE,
+  `error` TEXT,
+  `updated_at` DATETIME(6),
+  KEY `IDX_ingestion_job_files_job` (`job_id`, `position`),
+  CONSTRAINT `FK_ingestion_file_job` FOREIGN KEY (`job_id`) REFERENCES `ingestion_jobs` (`id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_uca1400_ai_ci;
+
+-- Tạo bảng ocr_result_cache (kết quả OCR theo SHA-256 của file và phiên bản OCR)
+CREATE TABLE IF NOT EXISTS `ocr_result_cache` (
+  `cache_key` VARCHAR(255) NOT NULL PRIMARY KEY,
+  `content_hash` CHAR(64) NOT NULL,
+  `engine_version` VARCHAR(128) NOT NULL,
+  `results` LONGTEXT NOT NULL,
+  `size_bytes` BIGINT NOT NULL,
+  `hit_count` BIGINT NOT NULL DEFAULT 0,
+  `created_at` DATETIME(6) NOT NULL,
+  `last_accessed_at` DATETIME(6) NOT NULL,
+  KEY `IDX_ocr_result_cache_accessed` (`last_accessed_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_uca1400_ai_ci;
+
+-- Tạo bảng document_pages (văn bản OCR từng trang, lưu ngay khi trang xong)
+CREATE TABLE IF NOT EXISTS `document_pages` (
+  `id` BIGINT AUTO_INCREMENT PRIMARY KEY,
+  `job_file_id` BIGINT NOT NULL,
+  `document_id` INT,
+  `page_number` INT NOT NULL,
+  `text` LONGTEXT,
+  `status` VARCHAR(16) NOT NULL,
+  `error` TEXT,
+  `updated_at` DATETIME(6),
+  UNIQUE KEY `UK_document_pages_file_page` (`job_file_id`, `page_number`),
+  KEY `IDX_document_pages_document` (`document_id`, `page_number`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_uca1400_ai_ci;
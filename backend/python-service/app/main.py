@@ -1,12 +1,22 @@
-from flask import Flask, request, jsonify
+from flask import Flask, Response, request, jsonify
+from werkzeug.serving import WSGIRequestHandler
 from utils.image_processing import convert_pdf_to_images
 from ocr_service import recognize_text_with_tesseract, process_word_to_text, handle_compare_request
+import io
+import gzip
+import zlib
+import json
 import os
 import uuid
 import traceback
 import logging
 import time
 
+try:
+    import cbor2  # Tùy chọn: chỉ cần khi backend gửi /compare dạng CBOR (ocr.compare.format=cbor)
+except ImportError:
+    cbor2 = None
+
 # Cấu hình logging
 logging.basicConfig(level=logging.INFO)
 logger = logging.getLogger(__name__)
@@ -15,6 +25,66 @@ app = Flask(__name__)
 
 TEMP_DIR = "temp"
 
+# Response từ COMPRESS_MIN_BYTES byte trở lên được nén gzip khi client gửi Accept-Encoding: gzip
+COMPRESS_MIN_BYTES = int(os.environ.get("COMPRESS_MIN_BYTES", "8192"))
+# Giới hạn kích thước body request sau khi giải nén
+MAX_DECOMPRESSED_BYTES = int(os.environ.get("MAX_DECOMPRESSED_BYTES", str(512 * 1024 * 1024)))
+
+
+class GzipRequestMiddleware:
+    """
+    Giải nén body request có Content-Encoding: gzip trước khi Flask đọc,
+    để request.get_json() và request.files dùng được như request không nén.
+    """
+
+    def __init__(self, wsgi_app):
+        self.wsgi_app = wsgi_app
+
+    def __call__(self, environ, start_response):
+        if environ.get('HTTP_CONTENT_ENCODING', '').strip().lower() == 'gzip':
+            length = int(environ.get('CONTENT_LENGTH') or 0)
+            body = environ['wsgi.input'].read(length) if length else environ['wsgi.input'].read()
+            decompressor = zlib.decompressobj(16 + zlib.MAX_WBITS)
+            try:
+                data = decompressor.decompress(body, MAX_DECOMPRESSED_BYTES)
+            except zlib.error as e:
+                return self._error(start_response, '400 Bad Request', f"Invalid gzip body: {e}")
+            if decompressor.unconsumed_tail:
+                return self._error(start_response, '413 Request Entity Too Large', "Decompressed body is too large")
+            environ['wsgi.input'] = io.BytesIO(data)
+            environ['CONTENT_LENGTH'] = str(len(data))
+            environ.pop('HTTP_CONTENT_ENCODING')
+            environ.pop('HTTP_TRANSFER_ENCODING', None)
+        return self.wsgi_app(environ, start_response)
+
+    @staticmethod
+    def _error(start_response, status, message):
+        body = json.dumps({"error": message}).encode()
+        start_response(status, [('Content-Type', 'application/json'), ('Content-Length', str(len(body)))])
+        return [body]
+
+
+app.wsgi_app = GzipRequestMiddleware(app.wsgi_app)
+
+
+@app.after_request
+def compress_response(response):
+    """
+    Nén gzip response JSON/CBOR lớn. Response dạng stream (/ocr/upload/pages) không được nén
+    để backend nhận từng trang ngay khi xong.
+    """
+    if (response.is_streamed or response.direct_passthrough
+            or 'Content-Encoding' in response.headers
+            or 'gzip' not in request.headers.get('Accept-Encoding', '').lower()):
+        return response
+    data = response.get_data()
+    if len(data) < COMPRESS_MIN_BYTES:
+        return response
+    response.set_data(gzip.compress(data, compresslevel=5))
+    response.headers['Content-Encoding'] = 'gzip'
+    response.vary.add('Accept-Encoding')
+    return response
+
 def save_uploaded_file(upload_file):
     file_ext = os.path.splitext(upload_file.filename)[1].lower()
     file_path = os.path.join(TEMP_DIR, f"temp_{uuid.uuid4().hex}{file_ext}")
@@ -36,9 +106,10 @@ def ocr_service():
         return jsonify({"error": "No files uploaded"}), 400
 
     results = []  # Danh sách lưu kết quả OCR cho từng file
-    for file in uploaded_files:
+    for source_index, file in enumerate(uploaded_files):
         file_path = None
         image_paths = []
+        first_result = len(results)
         try:
             file_path, file_ext = save_uploaded_file(file)
             start_time = time.time()
@@ -88,15 +159,82 @@ def ocr_service():
         finally:
             clean_temp_files(file_path, *image_paths)
 
+        # Gắn vị trí file trong request để client gửi nhiều file một lần biết kết quả thuộc file nào
+        for result in results[first_result:]:
+            result["source_index"] = source_index
+            result["source"] = file.filename
+
     return jsonify({"results": results}), 200
 
+@app.route('/ocr/upload/pages', methods=['POST'])
+def ocr_pages_service():
+    """
+    OCR một file và trả kết quả từng trang ngay khi trang đó xong (NDJSON, mỗi dòng một đối tượng JSON).
+    Dòng đầu là {"pages": tổng số trang}, các dòng sau là {"page": n, "text": ...} hoặc {"page": n, "error": ...}.
+    Trường form "pages" (ví dụ "2,5") chỉ OCR các trang này, dùng khi thử lại các trang bị lỗi.
+    File không phải PDF được coi là một trang.
+    """
+    file = request.files.get('file')
+    if not file:
+        logger.error("No file uploaded in the request.")
+        return jsonify({"error": "No file uploaded"}), 400
+    try:
+        requested_pages = {int(page) for page in request.form.get('pages', '').split(',') if page.strip()}
+    except ValueError:
+        return jsonify({"error": "Invalid pages parameter"}), 400
+
+    # Lưu file trước khi trả response vì request.files không còn dùng được khi stream
+    file_path, file_ext = save_uploaded_file(file)
+
+    def generate():
+        image_paths = []
+        try:
+            if file_ext == '.pdf':
+                image_paths = convert_pdf_to_images(file_path)
+            elif file_ext in ['.jpg', '.jpeg', '.png', '.bmp', '.tiff', '.tif', '.webp']:
+                image_paths = None
+            elif file_ext not in ['.doc', '.docx']:
+                yield json.dumps({"error": f"Unsupported file type: {file_ext}"}) + "\n"
+                return
+
+            page_count = len(image_paths) if image_paths else 1
+            yield json.dumps({"pages": page_count}) + "\n"
+            for page in range(1, page_count + 1):
+                if requested_pages and page not in requested_pages:
+                    continue
+                start_time = time.time()
+                try:
+                    if file_ext in ['.doc', '.docx']:
+                        text = process_word_to_text(file_path)
+                    else:
+                        text = recognize_text_with_tesseract(image_paths[page - 1] if image_paths else file_path).get('text', '')
+                    line = {"page": page, "text": text, "time": f"{time.time() - start_time:.2f} seconds"}
+                except Exception as e:
+                    logger.error(f"Error processing page {page} of {file.filename}: {e}")
+                    line = {"page": page, "error": str(e)}
+                yield json.dumps(line) + "\n"
+        except Exception as e:
+            # Lỗi của cả file (ví dụ không đọc được PDF) được báo trong một dòng, không cắt ngang response
+            logger.error(f"Error processing file {file.filename}: {e}")
+            logger.error(traceback.format_exc())
+            yield json.dumps({"error": str(e)}) + "\n"
+        finally:
+            clean_temp_files(file_path, *(image_paths or []))
+
+    return Response(generate(), mimetype='application/x-ndjson')
+
 @app.route('/ocr/compare', methods=['POST'])
 def compare_service():
     """
     API so sánh văn bản OCR với các văn bản trong cơ sở dữ liệu.
     """
     try:
-        request_data = request.get_json()
+        if request.mimetype == 'application/cbor':
+            if cbor2 is None:
+                return jsonify({"error": "CBOR is not supported, install cbor2"}), 415
+            request_data = cbor2.loads(request.get_data())
+        else:
+            request_data = request.get_json()
         if not request_data:
             logger.error("No data received for comparison.")
             return jsonify({"error": "No data received for comparison"}), 400
@@ -104,6 +242,9 @@ def compare_service():
         logger.info("Received comparison request with OCR text and documents.")
         results, status_code = handle_compare_request(request_data)
 
+        if cbor2 is not None and request.accept_mimetypes.best_match(
+                ['application/json', 'application/cbor']) == 'application/cbor':
+            return Response(cbor2.dumps(results), status=status_code, mimetype='application/cbor')
         return jsonify(results), status_code
     except Exception as e:
         logger.error(f"Error during text comparison: {e}")
@@ -111,4 +252,6 @@ def compare_service():
         return jsonify({"error": str(e)}), 500
 
 if __name__ == '__main__':
+    # HTTP/1.1 để backend giữ kết nối keep-alive trong pool thay vì mở kết nối mới cho mỗi request
+    WSGIRequestHandler.protocol_version = "HTTP/1.1"
     app.run(debug=True, host="0.0.0.0", port=5000)
\ No newline at end of file
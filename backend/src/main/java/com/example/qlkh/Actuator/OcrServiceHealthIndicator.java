@@ -0,0 +1,63 @@
+package com.example.qlkh.Actuator;
+
+import com.example.qlkh.Service.CircuitBreaker;
+import com.example.qlkh.Service.OcrEndpointPool;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mục ocrService của /actuator/health: trạng thái các circuit breaker gọi OCR service và của từng endpoint OCR.
+ * Mạch mở hoặc nửa mở thì báo DEGRADED; /actuator/health vẫn trả HTTP 200 (không phải DOWN),
+ * vì phần còn lại của ứng dụng vẫn chạy được khi OCR service khởi động lại.
+ */
+@Component("ocrService")
+public class OcrServiceHealthIndicator implements HealthIndicator {
+
+    private static final Status DEGRADED = new Status("DEGRADED", "OCR service calls are being rejected or probed");
+
+    private final List<CircuitBreaker> breakers;
+    private final OcrEndpointPool endpointPool;
+
+    public OcrServiceHealthIndicator(@Qualifier("ocrCircuitBreaker") CircuitBreaker ocrCircuitBreaker,
+                                     @Qualifier("compareCircuitBreaker") CircuitBreaker compareCircuitBreaker,
+                                     OcrEndpointPool endpointPool) {
+        this.breakers = List.of(ocrCircuitBreaker, compareCircuitBreaker);
+        this.endpointPool = endpointPool;
+    }
+
+    @Override
+    public Health health() {
+        boolean allClosed = true;
+        Health.Builder builder = Health.up();
+        for (CircuitBreaker breaker : breakers) {
+            CircuitBreaker.State state = breaker.getState();
+            allClosed &= state == CircuitBreaker.State.CLOSED;
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("state", state);
+            details.put("failureRate", breaker.getFailureRate());
+            if (state == CircuitBreaker.State.OPEN) {
+                details.put("retryAfterSeconds", breaker.retryAfterSeconds());
+            }
+            builder.withDetail(breaker.getName(), details);
+        }
+        List<Map<String, Object>> endpoints = new ArrayList<>();
+        for (OcrEndpointPool.Endpoint endpoint : endpointPool.getEndpoints()) {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("url", endpoint.getUrl());
+            details.put("weight", endpoint.getWeight());
+            details.put("outstanding", endpoint.getOutstanding());
+            details.put("ejected", endpoint.isEjected());
+            endpoints.add(details);
+        }
+        builder.withDetail("endpoints", endpoints);
+        return allClosed ? builder.build() : builder.status(DEGRADED).build();
+    }
+}
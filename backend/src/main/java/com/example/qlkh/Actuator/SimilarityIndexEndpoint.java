@@ -0,0 +1,25 @@
+package com.example.qlkh.Actuator;
+
+import com.example.qlkh.Service.DocumentSimilarityService;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+// GET /actuator/similarity: thông số chỉ mục so sánh văn bản
+@Component
+@Endpoint(id = "similarity")
+public class SimilarityIndexEndpoint {
+
+    private final DocumentSimilarityService documentSimilarityService;
+
+    public SimilarityIndexEndpoint(DocumentSimilarityService documentSimilarityService) {
+        this.documentSimilarityService = documentSimilarityService;
+    }
+
+    @ReadOperation
+    public Map<String, Object> similarity() {
+        return documentSimilarityService.getIndexStats();
+    }
+}
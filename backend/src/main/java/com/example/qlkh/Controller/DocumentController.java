@@ -1,24 +1,32 @@
 package com.example.qlkh.Controller;
 
+import com.example.qlkh.Exception.OcrOverloadedException;
+import com.example.qlkh.Service.DocumentIngestionService;
 import com.example.qlkh.Service.DocumentService;
+import com.example.qlkh.Service.FileStorageService;
 import com.example.qlkh.dto.DocumentDTO;
+import com.example.qlkh.dto.DocumentFileView;
+import com.example.qlkh.dto.DocumentPageDTO;
+import com.example.qlkh.dto.IngestionJobDTO;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.FileSystemResource;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.http.*;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.*;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.util.ArrayList;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import java.util.Optional;
 
 import static com.example.qlkh.Controller.OCRController.logger;
 
@@ -27,12 +35,14 @@ import static com.example.qlkh.Controller.OCRController.logger;
 public class DocumentController {
 
     private final DocumentService documentService;
+    private final DocumentIngestionService ingestionService;
+    private final FileStorageService fileStorageService;
 
-    @Value("${ocr.service.url}")
-    private String ocrServiceUrl;
-
-    public DocumentController(DocumentService documentService) {
+    public DocumentController(DocumentService documentService, DocumentIngestionService ingestionService,
+                              FileStorageService fileStorageService) {
         this.documentService = documentService;
+        this.ingestionService = ingestionService;
+        this.fileStorageService = fileStorageService;
     }
 
     @GetMapping
@@ -41,6 +51,10 @@ public class DocumentController {
         return ResponseEntity.ok(documents);
     }
 
+    /**
+     * Lưu file và tạo công việc nhập tài liệu; OCR chạy nền.
+     * @return 202 kèm công việc vừa tạo, tiến độ xem tại /api/documents/jobs/{id}.
+     */
     @PostMapping("/upload")
     public ResponseEntity<?> uploadDocuments(@RequestParam("files") List<MultipartFile> files,
                                              @RequestParam(value = "authors", required = false) String authorsJson) {
@@ -50,47 +64,16 @@ public class DocumentController {
                 return ResponseEntity.badRequest().body("Không có tệp nào được tải lên");
             }
 
-            List<DocumentDTO> savedDocuments = new ArrayList<>();
-
-            // Lặp qua từng tệp trong danh sách
-            for (MultipartFile file : files) {
-                logger.info("Processing file: {}", file.getOriginalFilename());
-                if (file.isEmpty()) {
-                    logger.warn("File is empty: {}", file.getOriginalFilename());
-                    continue;
-                }
-
-                String originalFileName = file.getOriginalFilename();
-                logger.info("Original file name: {}", originalFileName);
-                if (!isSupportedFileType(originalFileName)) {
-                    logger.warn("Unsupported file type: {}", originalFileName);
-                    continue;
-                }
-
-                File tempFile = File.createTempFile(UUID.randomUUID().toString(), getFileExtension(originalFileName));
-                file.transferTo(tempFile);
-
-                String extractedText = callOcrService(tempFile);
-                logger.info("Extracted text for file {}: {}", originalFileName, extractedText);
-
-                DocumentDTO documentDTO = new DocumentDTO();
-                documentDTO.setFileName(originalFileName);
-                documentDTO.setFilePath(tempFile.getAbsolutePath());
-                documentDTO.setAuthorIds(parseAuthors(authorsJson));
-                documentDTO.setExtractedText(extractedText);
-
-                DocumentDTO savedDocument = documentService.uploadDocument(documentDTO);
-                logger.info("Document saved with ID: {}", savedDocument.getId());
-                savedDocuments.add(savedDocument);
-                tempFile.delete();
-                logger.info("TempFile deleted!");
-            }
-
-            if (savedDocuments.isEmpty()) {
+            Optional<IngestionJobDTO> job = ingestionService.enqueue(files, parseAuthors(authorsJson));
+            if (job.isEmpty()) {
                 return ResponseEntity.badRequest().body("Không có tệp hợp lệ được tải lên");
             }
 
-            return ResponseEntity.ok(savedDocuments);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/documents/jobs/" + job.get().getId()))
+                    .body(job.get());
+        } catch (OcrOverloadedException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Lỗi khi tải lên tài liệu", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -98,60 +81,157 @@ public class DocumentController {
         }
     }
 
+    @GetMapping("/jobs/{id}")
+    public ResponseEntity<IngestionJobDTO> getIngestionJob(@PathVariable Long id) {
+        return ingestionService.getJob(id)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+    }
 
-    private List<Integer> parseAuthors(String authorsJson) {
+    /**
+     * Chạy lại các file lỗi của công việc; với PDF chỉ các trang lỗi được OCR lại.
+     */
+    @PostMapping("/jobs/{id}/retry")
+    public ResponseEntity<?> retryIngestionJob(@PathVariable Long id) {
         try {
-            if (authorsJson == null || authorsJson.isEmpty()) {
-                return List.of();
-            }
-            ObjectMapper mapper = new ObjectMapper();
-            return mapper.readValue(authorsJson, new TypeReference<List<Integer>>() {});
-        } catch (Exception e) {
-            throw new RuntimeException("Error parsing authors", e);
+            return ingestionService.retry(id)
+                    .<ResponseEntity<?>>map(job -> ResponseEntity.accepted()
+                            .location(URI.create("/api/documents/jobs/" + job.getId()))
+                            .body(job))
+                    .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).build());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         }
     }
 
-    private boolean isSupportedFileType(String fileName) {
-        return fileName.endsWith(".pdf") || fileName.endsWith(".docx") || fileName.endsWith(".doc")
-                || fileName.endsWith(".txt") || fileName.endsWith(".png") || fileName.endsWith(".jpg");
-    }
+    /**
+     * Tải file gốc của tài liệu, hỗ trợ Range (một khoảng byte, để trình duyệt xem PDF lớn theo từng phần),
+     * ETag/If-None-Match và If-Range. ETag là SHA-256 của file nên không đổi khi file không đổi.
+     * Khi Tomcat hỗ trợ sendfile, dữ liệu được gửi thẳng từ đĩa ra socket; nếu không, được chép qua
+     * FileChannel.transferTo, không đọc toàn bộ vào heap.
+     * Request có nhiều khoảng byte được trả về cả file (RFC 9110 cho phép bỏ qua Range).
+     */
+    @GetMapping("/{id}/file")
+    public void downloadDocumentFile(@PathVariable Integer id, HttpServletRequest request,
+                                     HttpServletResponse response) throws IOException {
+        DocumentFileView document;
+        Path path;
+        try {
+            document = documentService.getDocumentFileById(id);
+            path = fileStorageService.resolve(document.getFilePath());
+        } catch (RuntimeException e) {
+            response.sendError(HttpStatus.NOT_FOUND.value(), "Document not found");
+            return;
+        }
+        if (path == null) {
+            response.sendError(HttpStatus.NOT_FOUND.value(), "The file of this document is no longer stored");
+            return;
+        }
 
-    private String getFileExtension(String fileName) {
-        int lastIndex = fileName.lastIndexOf(".");
-        return lastIndex != -1 ? fileName.substring(lastIndex) : "";
-    }
+        long size = Files.size(path);
+        String etag = document.getContentHash() != null
+                ? "\"" + document.getContentHash() + "\""
+                : "W/\"" + size + "-" + Files.getLastModifiedTime(path).toMillis() + "\"";
+        response.setHeader(HttpHeaders.ETAG, etag);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().cachePrivate().getHeaderValue());
 
-    private String callOcrService(File file) {
-        try {
-            RestTemplate restTemplate = new RestTemplate();
+        String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+        if (ifNoneMatch != null && etagMatches(ifNoneMatch, etag)) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+        response.setContentType(MediaTypeFactory.getMediaType(document.getFileName())
+                .orElse(MediaType.APPLICATION_OCTET_STREAM).toString());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.inline()
+                .filename(document.getFileName(), StandardCharsets.UTF_8).build().toString());
 
-            MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
-            body.add("files", new FileSystemResource(file));
+        long start = 0;
+        long end = size - 1;
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        // If-Range khác ETag hiện tại: client đang giữ bản cũ, gửi lại cả file.
+        // If-Range dùng so sánh mạnh (RFC 9110 13.1.5): ETag yếu ở bất kỳ phía nào không bao giờ khớp
+        if (range != null && (ifRange == null || (!etag.startsWith("W/") && ifRange.equals(etag)))) {
+            List<HttpRange> ranges;
+            try {
+                ranges = HttpRange.parseRanges(range);
+            } catch (IllegalArgumentException e) {
+                ranges = List.of();
+            }
+            if (ranges.size() == 1) {
+                HttpRange requested = ranges.get(0);
+                if (size == 0 || requested.getRangeStart(size) >= size) {
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                    response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                    return;
+                }
+                start = requested.getRangeStart(size);
+                end = requested.getRangeEnd(size);
+                response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+            }
+        }
+        long length = end - start + 1;
+        response.setContentLengthLong(length);
+        if ("HEAD".equals(request.getMethod()) || length <= 0) {
+            return;
+        }
 
-            HttpEntity<MultiValueMap<String, Object>> requestEntity = new HttpEntity<>(body, headers);
+        if (Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"))) {
+            request.setAttribute("org.apache.tomcat.sendfile.filename", path.toString());
+            request.setAttribute("org.apache.tomcat.sendfile.start", start);
+            request.setAttribute("org.apache.tomcat.sendfile.end", end + 1);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                position += channel.transferTo(position, end + 1 - position, out);
+            }
+        }
+    }
 
-            ResponseEntity<String> response = restTemplate.postForEntity(ocrServiceUrl + "/upload", requestEntity, String.class);
+    // So sánh yếu theo RFC 9110: bỏ tiền tố W/ ở cả hai phía
+    private static boolean etagMatches(String ifNoneMatch, String etag) {
+        String current = etag.startsWith("W/") ? etag.substring(2) : etag;
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*") || (candidate.startsWith("W/") ? candidate.substring(2) : candidate).equals(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
 
-            if (response.getStatusCode().is2xxSuccessful()) {
-                ObjectMapper mapper = new ObjectMapper();
-                List<Map<String, Object>> results = mapper.readValue(
-                        mapper.readTree(response.getBody()).get("results").toString(),
-                        new TypeReference<List<Map<String, Object>>>() {}
-                );
+    @GetMapping("/{id}/pages")
+    public ResponseEntity<List<DocumentPageDTO>> getDocumentPages(@PathVariable Integer id) {
+        return ResponseEntity.ok(documentService.getDocumentPages(id));
+    }
 
-                StringBuilder extractedText = new StringBuilder();
-                for (Map<String, Object> result : results) {
-                    extractedText.append(result.get("text").toString()).append("\n");
-                }
-                return extractedText.toString().trim();
-            } else {
-                throw new RuntimeException("OCR Service error: " + response.getStatusCode());
+    /**
+     * Tìm các trang chứa đoạn văn bản q, kể cả trang của PDF chưa nhập xong (documentId null).
+     */
+    @GetMapping("/pages/search")
+    public ResponseEntity<List<DocumentPageDTO>> searchPages(@RequestParam("q") String query,
+                                                             @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        if (query.isBlank() || limit <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(documentService.searchPages(query, Math.min(limit, 100)));
+    }
+
+    private List<Integer> parseAuthors(String authorsJson) {
+        try {
+            if (authorsJson == null || authorsJson.isEmpty()) {
+                return List.of();
             }
+            ObjectMapper mapper = new ObjectMapper();
+            return mapper.readValue(authorsJson, new TypeReference<List<Integer>>() {});
         } catch (Exception e) {
-            throw new RuntimeException("Error calling OCR Service", e);
+            throw new RuntimeException("Error parsing authors", e);
         }
     }
 
@@ -1,18 +1,31 @@
 package com.example.qlkh.Controller;
 
+import com.example.qlkh.Exception.OcrOverloadedException;
+import com.example.qlkh.Service.DocumentSimilarityService;
 import com.example.qlkh.Service.OCRService;
+import com.example.qlkh.Service.OcrBulkhead;
+import com.example.qlkh.dto.SimilarityResultDTO;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping("/api/ocr")
@@ -23,29 +36,58 @@ public class OCRController {
     @Autowired
     private OCRService ocrService;
 
+    @Autowired
+    private DocumentSimilarityService documentSimilarityService;
+
+    @Autowired
+    private OcrBulkhead ocrBulkhead;
+
+    private ObjectMapper objectMapper;
+
+    // Bản sao ObjectMapper của Spring (cùng cấu hình với các API khác), không đóng output stream sau mỗi lần ghi
+    @Autowired
+    void setObjectMapper(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper.copy().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    // Luồng Tomcat được trả lại ngay sau khi gửi request OCR; response được ghi khi có kết quả
     @PostMapping("/upload")
-    public ResponseEntity<?> uploadFiles(@RequestParam("files") List<MultipartFile> files) {
+    public CompletableFuture<ResponseEntity<?>> uploadFiles(@RequestParam("files") List<MultipartFile> files) {
         if (files.isEmpty()) {
-            return ResponseEntity.badRequest().body("No files uploaded");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body("No files uploaded"));
         }
 
         // Kiểm tra từng file
         for (MultipartFile file : files) {
             String contentType = file.getContentType();
             if (contentType == null || (!contentType.equals("application/pdf") && !contentType.startsWith("image"))) {
-                return ResponseEntity.badRequest().body("Invalid file type for file: " + file.getOriginalFilename());
+                return CompletableFuture.completedFuture(
+                        ResponseEntity.badRequest().body("Invalid file type for file: " + file.getOriginalFilename()));
             }
         }
 
+        // Hết chỗ thì OcrOverloadedException được trả về 429/503 kèm Retry-After; permit được giữ tới khi có kết quả
+        OcrBulkhead.Permit permit = ocrBulkhead.acquire();
+        CompletableFuture<List<Map<String, Object>>> results;
         try {
             // Gọi service để xử lý nhiều file
-            List<Map<String, Object>> results = ocrService.processMultipleFiles(files);
-            return ResponseEntity.ok(results);
-        } catch (Exception e) {
-            logger.error("Error processing files: {}", e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body(Map.of("error", "Error processing files: " + e.getMessage()));
+            results = ocrService.processMultipleFiles(files);
+        } catch (OcrOverloadedException e) {
+            permit.close();
+            throw e;
+        } catch (RuntimeException e) {
+            permit.close();
+            results = CompletableFuture.failedFuture(e);
         }
+        return results
+                .whenComplete((value, error) -> permit.close())
+                .<ResponseEntity<?>>thenApply(ResponseEntity::ok)
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    logger.error("Error processing files: {}", cause.getMessage(), cause);
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .body(Map.of("error", "Error processing files: " + cause.getMessage()));
+                });
     }
 
     @PostMapping("/compare")
@@ -65,17 +107,92 @@ public class OCRController {
             return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body("Documents for comparison are missing");
         }
 
-        try {
+        try (OcrBulkhead.Permit permit = ocrBulkhead.acquire()) {
             Map<String, Object> payload = new HashMap<>();
             payload.put("text", ocrText);
             payload.put("documents", documents);
 
             Map<String, Object> comparisonResults = ocrService.compareWithPython(payload);
             return ResponseEntity.ok(comparisonResults);
+        } catch (OcrOverloadedException e) {
+            throw e;
+        } catch (Exception e) {
+            logger.error("Error during comparison: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Error during comparison: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * So sánh văn bản OCR với các tài liệu đã lưu ngay trên backend,
+     * client chỉ cần gửi văn bản OCR thay vì toàn bộ danh sách tài liệu.
+     */
+    @PostMapping("/compare/indexed")
+    public ResponseEntity<?> compareIndexed(@RequestBody Map<String, Object> requestBody,
+                                            @RequestParam(value = "limit", required = false) Integer limit,
+                                            @RequestParam(value = "minScore", required = false) Double minScore) {
+        String ocrText = (String) requestBody.get("text");
+        if (ocrText == null || ocrText.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body("Text for comparison is missing");
+        }
+
+        try {
+            List<SimilarityResultDTO> results = documentSimilarityService.compare(ocrText.strip(), limit, minScore);
+            return ResponseEntity.ok(Map.of("results", results));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Validation error during comparison: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
             logger.error("Error during comparison: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("error", "Error during comparison: " + e.getMessage()));
         }
     }
+
+    /**
+     * Như /compare/indexed nhưng trả về top-k kết quả dạng NDJSON (mỗi dòng một kết quả),
+     * mỗi kết quả được gửi ngay khi chắc chắn nằm trong top-k (điểm lớn hơn cận trên của mọi ứng viên còn lại)
+     * thay vì chờ chấm xong mọi ứng viên.
+     */
+    @PostMapping("/compare/stream")
+    public ResponseEntity<StreamingResponseBody> compareStream(@RequestBody Map<String, Object> requestBody,
+                                                               @RequestParam(value = "k", defaultValue = "10") int k,
+                                                               @RequestParam(value = "minSimilarity", defaultValue = "0") double minSimilarity) {
+        String ocrText = (String) requestBody.get("text");
+        if (ocrText == null || ocrText.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).contentType(MediaType.TEXT_PLAIN)
+                    .body(outputStream -> outputStream.write("Text for comparison is missing".getBytes(StandardCharsets.UTF_8)));
+        }
+        String text = ocrText.strip();
+        try {
+            // Kiểm tra trước khi bắt đầu stream để vẫn trả được mã lỗi 400
+            if (k <= 0) {
+                throw new IllegalArgumentException("k must be positive.");
+            }
+            documentSimilarityService.validateQuery(text);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Validation error during comparison: {}", e.getMessage());
+            Map<String, String> error = Map.of("error", e.getMessage());
+            return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON)
+                    .body(outputStream -> objectMapper.writeValue(outputStream, error));
+        }
+
+        StreamingResponseBody body = outputStream -> {
+            try {
+                documentSimilarityService.compareStreaming(text, k, minSimilarity, result -> {
+                    try {
+                        objectMapper.writeValue(outputStream, result);
+                        outputStream.write('\n');
+                        outputStream.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                // Client ngắt kết nối giữa chừng
+                logger.warn("Streaming comparison aborted: {}", e.getMessage());
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType("application/x-ndjson")).body(body);
+    }
 }
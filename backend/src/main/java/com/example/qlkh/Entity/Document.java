@@ -16,7 +16,7 @@ import java.util.List;
 @NoArgsConstructor
 @EqualsAndHashCode(onlyExplicitlyIncluded = true)
 @Entity
-@Table(name = "documents")
+@Table(name = "documents", indexes = @Index(name = "IDX_documents_content_hash", columnList = "content_hash", unique = true))
 public class Document {
 
     @Id
@@ -45,6 +45,11 @@ public class Document {
     @Column(name = "extracted_text", columnDefinition = "TEXT")
     private String extractedText;
 
+    // SHA-256 (hex) của file gốc, dùng để nhận ra file đã tải lên trước đó; null với tài liệu cũ.
+    // Unique: hai công việc lưu cùng nội dung một lúc thì chỉ một tài liệu được tạo
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
     @NotNull(message = "Created at cannot be null")
     @Column(name = "created_at", nullable = false, columnDefinition = "TIMESTAMP DEFAULT CURRENT_TIMESTAMP")
     private LocalDateTime createdAt;
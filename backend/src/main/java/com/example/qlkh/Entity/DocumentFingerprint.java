@@ -0,0 +1,62 @@
+package com.example.qlkh.Entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Fingerprint đã chuẩn hóa của tài liệu, so sánh văn bản chỉ đọc bảng này thay vì cột extracted_text
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@Entity
+@Table(name = "document_fingerprints")
+public class DocumentFingerprint {
+
+    @Id
+    @EqualsAndHashCode.Include
+    @Column(name = "document_id")
+    private Integer documentId;
+
+    @Column(name = "fingerprint_version", nullable = false)
+    private Integer version;
+
+    // Số từ của văn bản gốc (len(text.split())), dùng cho ngưỡng > 5 từ
+    @Column(name = "raw_word_count", nullable = false)
+    private Integer rawWordCount;
+
+    // Id token (token_dictionary) từng từ theo thứ tự, dùng để tìm đoạn trùng lặp
+    @Lob
+    @Column(name = "token_ids", nullable = false, columnDefinition = "LONGBLOB")
+    private byte[] tokenIds;
+
+    // Tập id token đã sắp xếp, dùng cho Jaccard, chỉ mục đảo và MinHash
+    @Lob
+    @Column(name = "token_set", nullable = false, columnDefinition = "LONGBLOB")
+    private byte[] tokenSet;
+
+    // Tập hash shingle 3 từ đã sắp xếp
+    @Lob
+    @Column(name = "shingle_hashes", nullable = false, columnDefinition = "LONGBLOB")
+    private byte[] shingleHashes;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        this.createdAt = LocalDateTime.now();
+    }
+
+    @Override
+    public String toString() {
+        return "DocumentFingerprint{" +
+                "documentId=" + documentId +
+                ", version=" + version +
+                ", rawWordCount=" + rawWordCount +
+                '}';
+    }
+}
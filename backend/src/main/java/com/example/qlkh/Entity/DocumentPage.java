@@ -0,0 +1,57 @@
+package com.example.qlkh.Entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Kết quả OCR của một trang, lưu ngay khi OCR service trả về trang đó; document_id được gán khi tài liệu đã lưu
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@Entity
+@Table(name = "document_pages",
+        uniqueConstraints = @UniqueConstraint(name = "UK_document_pages_file_page", columnNames = {"job_file_id", "page_number"}),
+        indexes = @Index(name = "IDX_document_pages_document", columnList = "document_id, page_number"))
+public class DocumentPage {
+
+    public enum Status {
+        DONE, FAILED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @EqualsAndHashCode.Include
+    private Long id;
+
+    @Column(name = "job_file_id", nullable = false)
+    private Long jobFileId;
+
+    @Column(name = "document_id")
+    private Integer documentId;
+
+    // Bắt đầu từ 1
+    @Column(name = "page_number", nullable = false)
+    private Integer pageNumber;
+
+    @Column(name = "text", columnDefinition = "LONGTEXT")
+    private String text;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private Status status;
+
+    @Column(name = "error", columnDefinition = "TEXT")
+    private String error;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        this.updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.qlkh.Entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Một file trong công việc nhập tài liệu; trạng thái được lưu theo từng file nên file đã xong không bị OCR lại
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@Entity
+@Table(name = "ingestion_job_files", indexes = @Index(name = "IDX_ingestion_job_files_job", columnList = "job_id, position"))
+public class IngestionJobFile {
+
+    public enum Status {
+        PENDING, PROCESSING, DONE, FAILED, SKIPPED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @EqualsAndHashCode.Include
+    private Long id;
+
+    @Column(name = "job_id", nullable = false)
+    private Long jobId;
+
+    // Thứ tự file trong request tải lên
+    @Column(name = "position", nullable = false)
+    private Integer position;
+
+    @Column(name = "file_name", nullable = false)
+    private String fileName;
+
+    // File tạm trong thư mục upload, bị xóa khi file đã xử lý xong
+    @Column(name = "stored_path", columnDefinition = "TEXT")
+    private String storedPath;
+
+    @Column(name = "file_size")
+    private Long fileSize;
+
+    // SHA-256 (hex) tính trong lúc ghi file xuống đĩa
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    // Số trang OCR service báo cho file PDF, null khi chưa biết hoặc file không OCR theo trang
+    @Column(name = "total_pages")
+    private Integer totalPages;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private Status status = Status.PENDING;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "document_id")
+    private Integer documentId;
+
+    // File trùng nội dung với tài liệu đã có: không OCR lại, chỉ thêm tác giả cho tài liệu đó
+    @Column(name = "deduplicated", nullable = false)
+    private boolean deduplicated;
+
+    @Column(name = "error", columnDefinition = "TEXT")
+    private String error;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        this.updatedAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.qlkh.Entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Kết quả OCR đã lưu của một file, khóa theo nội dung file và phiên bản/cấu hình OCR
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@Entity
+@Table(name = "ocr_result_cache", indexes = @Index(name = "IDX_ocr_result_cache_accessed", columnList = "last_accessed_at"))
+public class OcrCacheEntry {
+
+    // content_hash + ":" + engine_version
+    @Id
+    @EqualsAndHashCode.Include
+    @Column(name = "cache_key", length = 255)
+    private String cacheKey;
+
+    @Column(name = "content_hash", nullable = false, length = 64)
+    private String contentHash;
+
+    @Column(name = "engine_version", nullable = false, length = 128)
+    private String engineVersion;
+
+    // Danh sách kết quả OCR service trả về cho file (JSON)
+    @Column(name = "results", nullable = false, columnDefinition = "LONGTEXT")
+    private String results;
+
+    @Column(name = "size_bytes", nullable = false)
+    private long sizeBytes;
+
+    @Column(name = "hit_count", nullable = false)
+    private long hitCount;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "last_accessed_at", nullable = false)
+    private LocalDateTime lastAccessedAt;
+}
@@ -0,0 +1,48 @@
+package com.example.qlkh.Entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import org.springframework.data.domain.Persistable;
+
+// Một từ đã chuẩn hóa trong từ điển dùng chung; id được cấp tuần tự và không bao giờ thay đổi
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@Entity
+@Table(name = "token_dictionary")
+public class TokenDictionaryEntry implements Persistable<Integer> {
+
+    @Id
+    @EqualsAndHashCode.Include
+    @Column(name = "token_id")
+    private Integer id;
+
+    @Column(name = "token_hash", nullable = false, unique = true)
+    private Long tokenHash;
+
+    @Column(name = "token", nullable = false, columnDefinition = "TEXT")
+    private String token;
+
+    // Id do ứng dụng cấp: báo cho Spring Data đây là bản ghi mới để insert thẳng, không select trước
+    @Transient
+    private boolean newEntry = true;
+
+    public TokenDictionaryEntry(Integer id, Long tokenHash, String token) {
+        this.id = id;
+        this.tokenHash = tokenHash;
+        this.token = token;
+    }
+
+    @Override
+    public boolean isNew() {
+        return newEntry;
+    }
+
+    @PostLoad
+    @PostPersist
+    protected void markNotNew() {
+        this.newEntry = false;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.qlkh.Exception;
+
+import org.springframework.http.HttpStatus;
+
+// OCR service đang quá tải: request bị từ chối ngay thay vì chờ chiếm luồng Tomcat
+public class OcrOverloadedException extends RuntimeException {
+
+    private final HttpStatus status;
+    private final long retryAfterSeconds;
+
+    public OcrOverloadedException(HttpStatus status, long retryAfterSeconds, String message) {
+        super(message);
+        this.status = status;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.qlkh.Exception;
+
+// Lời gọi OCR service thất bại; statusCode = 0 khi không nhận được response (lỗi kết nối, hết thời gian chờ)
+public class OcrServiceException extends RuntimeException {
+
+    private final int statusCode;
+
+    public OcrServiceException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public OcrServiceException(int statusCode, String message, Throwable cause) {
+        super(message, cause);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return true khi lỗi có thể do OCR service đang khởi động lại hoặc quá tải, gọi lại có thể thành công.
+     */
+    public boolean isTransient() {
+        return statusCode == 0 || statusCode == 429 || statusCode == 502 || statusCode == 503 || statusCode == 504;
+    }
+
+    /**
+     * @return true khi lỗi do OCR service chứ không do request (4xx), được tính vào circuit breaker.
+     */
+    public boolean isServiceFailure() {
+        return statusCode == 0 || statusCode == 429 || statusCode >= 500;
+    }
+}
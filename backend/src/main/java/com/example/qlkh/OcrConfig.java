@@ -0,0 +1,146 @@
+package com.example.qlkh;
+
+import com.example.qlkh.Service.CircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.async.AsyncExecChain;
+import org.apache.hc.client5.http.async.AsyncExecChainHandler;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.Cancellable;
+import org.apache.hc.core5.concurrent.CancellableDependency;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@Configuration
+public class OcrConfig {
+
+    /**
+     * Pool kết nối không chặn tới OCR service: tối đa ocr.http.max-per-route request chạy cùng lúc trên mỗi host,
+     * các request còn lại chờ trong hàng đợi của pool mà không giữ luồng nào.
+     * Metric httpcomponents.httpclient.pool.* (tag httpclient=ocr).
+     */
+    @Bean(destroyMethod = "close")
+    public PoolingAsyncClientConnectionManager ocrAsyncConnectionManager(
+            @Value("${ocr.http.max-total:20}") int maxTotal,
+            @Value("${ocr.http.max-per-route:8}") int maxPerRoute,
+            @Value("${ocr.http.connect-timeout-ms:60000}") long connectTimeoutMs,
+            @Value("${ocr.http.read-timeout-ms:200000}") long readTimeoutMs,
+            MeterRegistry meterRegistry) {
+        PoolingAsyncClientConnectionManager connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxTotal)
+                .setMaxConnPerRoute(maxPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMs))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .setTimeToLive(TimeValue.ofMinutes(5))
+                        .build())
+                .build();
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "ocr").bindTo(meterRegistry);
+        return connectionManager;
+    }
+
+    // Vài luồng I/O phục vụ mọi request OCR đang chờ; request xếp hàng chờ kết nối tối đa bằng deadline của nó
+    @Bean(destroyMethod = "close")
+    public CloseableHttpAsyncClient ocrAsyncHttpClient(PoolingAsyncClientConnectionManager ocrAsyncConnectionManager,
+                                                       @Value("${ocr.http.io-threads:2}") int ioThreads,
+                                                       @Value("${ocr.http.read-timeout-ms:200000}") long readTimeoutMs,
+                                                       @Value("${ocr.http.deadline-ms:600000}") long deadlineMs) {
+        CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                .setConnectionManager(ocrAsyncConnectionManager)
+                .setIOReactorConfig(IOReactorConfig.custom().setIoThreadCount(Math.max(1, ioThreads)).build())
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(deadlineMs))
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMs))
+                        .build())
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofSeconds(30))
+                // OcrClient tự gọi lại (có jitter, sang endpoint khác); retry mặc định của client gọi lại 429/503 thêm lần nữa
+                .disableAutomaticRetries()
+                .addExecInterceptorFirst("discard-on-cancel", DISCARD_ON_CANCEL)
+                .build();
+        client.start();
+        return client;
+    }
+
+    /**
+     * Hủy future của request thì đóng luôn kết nối của nó. Với kết nối vừa mở, HttpClient 5.2 bỏ qua việc hủy:
+     * request thua khi gửi thêm (hedging) hay bị hủy vẫn giữ kết nối tới khi OCR service trả lời hoặc hết read timeout.
+     */
+    private static final AsyncExecChainHandler DISCARD_ON_CANCEL = (request, entityProducer, scope, chain, callback) -> {
+        CancellableDependency dependency = new CancellableDependency() {
+            @Override
+            public void setDependency(Cancellable cancellable) {
+                scope.cancellableDependency.setDependency(() -> {
+                    cancellable.cancel();
+                    // Request đã xong thì kết nối đã được trả về pool, không còn gì để đóng
+                    scope.execRuntime.discardEndpoint();
+                    return true;
+                });
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return scope.cancellableDependency.isCancelled();
+            }
+
+            @Override
+            public boolean cancel() {
+                return scope.cancellableDependency.cancel();
+            }
+        };
+        chain.proceed(request, entityProducer, new AsyncExecChain.Scope(scope.exchangeId, scope.route, scope.originalRequest,
+                dependency, scope.clientContext, scope.execRuntime, scope.scheduler, scope.execCount), callback);
+    };
+
+    /**
+     * Circuit breaker cho các lời gọi OCR (/upload, /upload/pages) và cho /compare, cấu hình chung ocr.circuit.*.
+     * Trạng thái xem qua /actuator/health (ocrService) và metric ocr.circuit.*.
+     */
+    @Bean
+    public CircuitBreaker ocrCircuitBreaker(@Value("${ocr.circuit.window-size:20}") int windowSize,
+                                            @Value("${ocr.circuit.minimum-calls:10}") int minimumCalls,
+                                            @Value("${ocr.circuit.failure-rate-threshold:0.5}") double failureRateThreshold,
+                                            @Value("${ocr.circuit.open-ms:10000}") long openMs,
+                                            @Value("${ocr.circuit.half-open-calls:2}") int halfOpenCalls,
+                                            MeterRegistry meterRegistry) {
+        return new CircuitBreaker("ocr", windowSize, minimumCalls, failureRateThreshold, openMs, halfOpenCalls, meterRegistry);
+    }
+
+    @Bean
+    public CircuitBreaker compareCircuitBreaker(@Value("${ocr.circuit.window-size:20}") int windowSize,
+                                                @Value("${ocr.circuit.minimum-calls:10}") int minimumCalls,
+                                                @Value("${ocr.circuit.failure-rate-threshold:0.5}") double failureRateThreshold,
+                                                @Value("${ocr.circuit.open-ms:10000}") long openMs,
+                                                @Value("${ocr.circuit.half-open-calls:2}") int halfOpenCalls,
+                                                MeterRegistry meterRegistry) {
+        return new CircuitBreaker("compare", windowSize, minimumCalls, failureRateThreshold, openMs, halfOpenCalls, meterRegistry);
+    }
+
+    /**
+     * Luồng ghi file vào request multipart và chạy callback khi có kết quả OCR (lưu cache, lưu trang),
+     * để các việc có thể chặn (đọc đĩa, JDBC) không chạy trên luồng I/O của client.
+     */
+    @Bean(destroyMethod = "shutdownNow")
+    public ExecutorService ocrIoExecutor(@Value("${ocr.client.io-executor-threads:8}") int threads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "ocr-io-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
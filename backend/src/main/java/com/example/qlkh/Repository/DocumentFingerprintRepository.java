@@ -0,0 +1,33 @@
+package com.example.qlkh.Repository;
+
+import com.example.qlkh.Entity.DocumentFingerprint;
+import com.example.qlkh.dto.FingerprintView;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface DocumentFingerprintRepository extends JpaRepository<DocumentFingerprint, Integer> {
+
+    String VIEW_SELECT = "select new com.example.qlkh.dto.FingerprintView(f.documentId, d.fileName, f.rawWordCount, "
+            + "f.tokenIds, f.tokenSet, f.shingleHashes) "
+            + "from DocumentFingerprint f join Document d on d.id = f.documentId ";
+
+    @Query(VIEW_SELECT + "where f.documentId in :ids order by f.documentId")
+    List<FingerprintView> findViewsByDocumentIdIn(@Param("ids") Collection<Integer> ids);
+
+    // Duyệt theo lô (keyset) khi dựng lại chỉ mục so sánh
+    @Query(VIEW_SELECT + "where f.documentId > :lastId order by f.documentId")
+    List<FingerprintView> findViewsAfter(@Param("lastId") Integer lastId, Pageable pageable);
+
+    // Tài liệu chưa có fingerprint hoặc fingerprint đã cũ
+    @Query("select d.id from Document d where not exists "
+            + "(select 1 from DocumentFingerprint f where f.documentId = d.id and f.version = :version) "
+            + "order by d.id")
+    List<Integer> findDocumentIdsMissingFingerprint(@Param("version") Integer version, Pageable pageable);
+}
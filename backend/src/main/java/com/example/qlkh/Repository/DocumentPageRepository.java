@@ -0,0 +1,47 @@
+package com.example.qlkh.Repository;
+
+import com.example.qlkh.Entity.DocumentPage;
+import com.example.qlkh.dto.PageCountView;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface DocumentPageRepository extends JpaRepository<DocumentPage, Long> {
+
+    List<DocumentPage> findByJobFileIdOrderByPageNumberAsc(Long jobFileId);
+
+    Optional<DocumentPage> findByJobFileIdAndPageNumber(Long jobFileId, Integer pageNumber);
+
+    List<DocumentPage> findByDocumentIdOrderByPageNumberAsc(Integer documentId);
+
+    @Query("select p.jobFileId as jobFileId, count(p) as pages from DocumentPage p " +
+            "where p.jobFileId in :jobFileIds and p.status = :status group by p.jobFileId")
+    List<PageCountView> countByJobFileIds(@Param("jobFileIds") Collection<Long> jobFileIds,
+                                          @Param("status") DocumentPage.Status status);
+
+    // Tìm cả trang của file chưa nhập xong
+    @Query("select p from DocumentPage p where p.status = :status " +
+            "and lower(p.text) like lower(concat('%', :query, '%')) order by p.jobFileId desc, p.pageNumber asc")
+    List<DocumentPage> search(@Param("query") String query, @Param("status") DocumentPage.Status status,
+                              Pageable pageable);
+
+    @Modifying
+    @Query("update DocumentPage p set p.documentId = :documentId where p.jobFileId = :jobFileId")
+    int assignDocument(@Param("jobFileId") Long jobFileId, @Param("documentId") Integer documentId);
+
+    @Modifying
+    @Query("delete from DocumentPage p where p.jobFileId = :jobFileId")
+    int deleteByJobFileId(@Param("jobFileId") Long jobFileId);
+
+    @Modifying
+    @Query("delete from DocumentPage p where p.documentId = :documentId")
+    int deleteByDocumentId(@Param("documentId") Integer documentId);
+}
@@ -1,10 +1,30 @@
 package com.example.qlkh.Repository;
 
 import com.example.qlkh.Entity.Document;
+import com.example.qlkh.dto.DocumentFileView;
+import com.example.qlkh.dto.DocumentTextView;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
 @Repository
 public interface DocumentRepository extends JpaRepository<Document, Integer> {
 
+    // Lấy văn bản của các tài liệu, không nạp danh sách tác giả
+    List<DocumentTextView> findProjectedByIdIn(Collection<Integer> ids);
+
+    // Chỉ lấy đường dẫn, tên và hash của file, mỗi request tải file (kể cả Range) một truy vấn
+    Optional<DocumentFileView> findFileById(Integer id);
+
+    Optional<Document> findFirstByContentHashOrderByIdAsc(String contentHash);
+
+    @Query("select distinct d.contentHash from Document d where d.contentHash in :hashes")
+    List<String> findContentHashesIn(@Param("hashes") Collection<String> hashes);
+
+    boolean existsByFilePath(String filePath);
 }
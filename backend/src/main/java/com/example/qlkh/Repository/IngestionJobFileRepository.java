@@ -0,0 +1,22 @@
+package com.example.qlkh.Repository;
+
+import com.example.qlkh.Entity.IngestionJobFile;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface IngestionJobFileRepository extends JpaRepository<IngestionJobFile, Long> {
+
+    List<IngestionJobFile> findByJobIdOrderByPositionAsc(Long jobId);
+
+    List<IngestionJobFile> findByJobIdAndStatusOrderByPositionAsc(Long jobId, IngestionJobFile.Status status);
+
+    @Modifying
+    @Query("update IngestionJobFile f set f.status = :to where f.status = :from")
+    int updateStatus(@Param("from") IngestionJobFile.Status from, @Param("to") IngestionJobFile.Status to);
+}
@@ -0,0 +1,34 @@
+package com.example.qlkh.Repository;
+
+import com.example.qlkh.Entity.IngestionJob;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface IngestionJobRepository extends JpaRepository<IngestionJob, Long> {
+
+    @Query("select j.id from IngestionJob j where j.status = :status order by j.id")
+    List<Long> findIdsByStatus(@Param("status") IngestionJob.Status status, Pageable pageable);
+
+    long countByStatus(IngestionJob.Status status);
+
+    // Nhận công việc: chỉ thành công khi trạng thái vẫn là QUEUED
+    @Modifying
+    @Query("update IngestionJob j set j.status = :running, j.startedAt = :now "
+            + "where j.id = :id and j.status = :queued")
+    int claim(@Param("id") Long id,
+              @Param("queued") IngestionJob.Status queued,
+              @Param("running") IngestionJob.Status running,
+              @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("update IngestionJob j set j.status = :to where j.status = :from")
+    int updateStatus(@Param("from") IngestionJob.Status from, @Param("to") IngestionJob.Status to);
+}
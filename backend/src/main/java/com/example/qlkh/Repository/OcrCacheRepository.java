@@ -0,0 +1,27 @@
+package com.example.qlkh.Repository;
+
+import com.example.qlkh.Entity.OcrCacheEntry;
+import com.example.qlkh.dto.OcrCacheKeyView;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface OcrCacheRepository extends JpaRepository<OcrCacheEntry, String> {
+
+    @Modifying
+    @Query("update OcrCacheEntry e set e.lastAccessedAt = :now, e.hitCount = e.hitCount + 1 where e.cacheKey = :key")
+    int touch(@Param("key") String cacheKey, @Param("now") LocalDateTime now);
+
+    @Query("select coalesce(sum(e.sizeBytes), 0) from OcrCacheEntry e")
+    long totalSizeBytes();
+
+    // Các mục ít được dùng gần đây nhất, bị xóa trước khi cache vượt dung lượng
+    List<OcrCacheKeyView> findByOrderByLastAccessedAtAsc(Pageable pageable);
+}
@@ -0,0 +1,15 @@
+package com.example.qlkh.Repository;
+
+import com.example.qlkh.Entity.TokenDictionaryEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface TokenDictionaryRepository extends JpaRepository<TokenDictionaryEntry, Integer> {
+
+    // Duyệt theo lô (keyset) khi nạp từ điển lúc khởi động
+    List<TokenDictionaryEntry> findByIdGreaterThanOrderByIdAsc(Integer lastId, Pageable pageable);
+}
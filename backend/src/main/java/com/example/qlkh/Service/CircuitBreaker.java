@@ -0,0 +1,232 @@
+package com.example.qlkh.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.function.LongSupplier;
+
+import static com.example.qlkh.Controller.OCRController.logger;
+
+/**
+ * Circuit breaker cho một loại lời gọi tới OCR service. Tỉ lệ lỗi trong windowSize lời gọi gần nhất
+ * (khi đã có ít nhất minimumCalls lời gọi) vượt failureRateThreshold thì mạch mở: lời gọi bị từ chối ngay
+ * trong openMs thay vì chờ hết timeout. Hết thời gian đó mạch chuyển sang nửa mở, cho halfOpenCalls lời gọi thử;
+ * tất cả thành công thì mạch đóng lại, một lời gọi lỗi thì mạch mở tiếp.
+ * Metric: ocr.circuit.state (1 cho trạng thái hiện tại), ocr.circuit.calls, ocr.circuit.transitions, tag name.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openMs;
+    private final int halfOpenCalls;
+    private final MeterRegistry meterRegistry;
+    // Thời gian hiện tại (ms)
+    private final LongSupplier clock;
+    private final Counter successes;
+    private final Counter failures;
+    private final Counter rejected;
+
+    // Kết quả các lời gọi gần nhất (true = lỗi), ghi vòng
+    private final boolean[] window;
+    private int windowPosition;
+    private int windowCount;
+    private int windowFailures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenInFlight;
+    private int halfOpenSucceeded;
+    // Tăng mỗi lần đổi trạng thái
+    private long epoch;
+
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+                          long openMs, int halfOpenCalls, MeterRegistry meterRegistry) {
+        this(name, windowSize, minimumCalls, failureRateThreshold, openMs, halfOpenCalls, meterRegistry,
+                System::currentTimeMillis);
+    }
+
+    CircuitBreaker(String name, int windowSize, int minimumCalls, double failureRateThreshold,
+                   long openMs, int halfOpenCalls, MeterRegistry meterRegistry, LongSupplier clock) {
+        this.name = name;
+        this.windowSize = Math.max(1, windowSize);
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, this.windowSize));
+        this.failureRateThreshold = failureRateThreshold;
+        this.openMs = openMs;
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+        this.window = new boolean[this.windowSize];
+        for (State value : State.values()) {
+            Gauge.builder("ocr.circuit.state", this, breaker -> breaker.getState() == value ? 1 : 0)
+                    .description("1 when the circuit breaker is in this state")
+                    .tag("name", name)
+                    .tag("state", value.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+        this.successes = Counter.builder("ocr.circuit.calls").tag("name", name).tag("outcome", "success").register(meterRegistry);
+        this.failures = Counter.builder("ocr.circuit.calls").tag("name", name).tag("outcome", "failure").register(meterRegistry);
+        this.rejected = Counter.builder("ocr.circuit.calls").tag("name", name).tag("outcome", "rejected").register(meterRegistry);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Xin phép gọi; lời gọi được phép phải báo kết quả đúng một lần qua Call.
+     * @return null khi mạch đang mở hoặc đã đủ lời gọi thử ở trạng thái nửa mở.
+     */
+    public synchronized Call tryAcquire() {
+        if (state == State.OPEN && clock.getAsLong() - openedAt >= openMs) {
+            transition(State.HALF_OPEN);
+        }
+        boolean permitted = switch (state) {
+            case CLOSED -> true;
+            case OPEN -> false;
+            case HALF_OPEN -> {
+                if (halfOpenInFlight + halfOpenSucceeded >= halfOpenCalls) {
+                    yield false;
+                }
+                halfOpenInFlight++;
+                yield true;
+            }
+        };
+        if (!permitted) {
+            rejected.increment();
+            return null;
+        }
+        return new Call(epoch);
+    }
+
+    /**
+     * @return true khi lời gọi mới sẽ bị từ chối ngay (không đổi trạng thái mạch).
+     */
+    public synchronized boolean isOpen() {
+        return state == State.OPEN && clock.getAsLong() - openedAt < openMs;
+    }
+
+    // Kết quả của lời gọi bắt đầu trước lần đổi trạng thái gần nhất chỉ được đếm vào metric
+    private synchronized void complete(long callEpoch, Boolean failed) {
+        if (failed != null) {
+            (failed ? failures : successes).increment();
+        }
+        if (callEpoch != epoch) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            halfOpenInFlight--;
+            if (Boolean.TRUE.equals(failed)) {
+                transition(State.OPEN);
+            } else if (Boolean.FALSE.equals(failed) && ++halfOpenSucceeded >= halfOpenCalls) {
+                transition(State.CLOSED);
+            }
+        } else if (state == State.CLOSED && failed != null) {
+            record(failed);
+            if (failed && windowCount >= minimumCalls && (double) windowFailures / windowCount >= failureRateThreshold) {
+                transition(State.OPEN);
+            }
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return Số giây còn lại tới khi mạch cho lời gọi thử, ít nhất 1.
+     */
+    public synchronized long retryAfterSeconds() {
+        long remainingMs = state == State.OPEN ? openMs - (clock.getAsLong() - openedAt) : 0;
+        return Math.max(1, (remainingMs + 999) / 1000);
+    }
+
+    /**
+     * @return Tỉ lệ lỗi trong cửa sổ hiện tại, -1 khi chưa có lời gọi nào.
+     */
+    public synchronized double getFailureRate() {
+        return windowCount == 0 ? -1 : (double) windowFailures / windowCount;
+    }
+
+    private void record(boolean failed) {
+        if (windowCount == windowSize) {
+            if (window[windowPosition]) {
+                windowFailures--;
+            }
+        } else {
+            windowCount++;
+        }
+        window[windowPosition] = failed;
+        if (failed) {
+            windowFailures++;
+        }
+        windowPosition = (windowPosition + 1) % windowSize;
+    }
+
+    private void transition(State next) {
+        State previous = state;
+        state = next;
+        epoch++;
+        windowPosition = 0;
+        windowCount = 0;
+        windowFailures = 0;
+        halfOpenInFlight = 0;
+        halfOpenSucceeded = 0;
+        if (next == State.OPEN) {
+            openedAt = clock.getAsLong();
+        }
+        Counter.builder("ocr.circuit.transitions")
+                .tag("name", name)
+                .tag("from", previous.name().toLowerCase())
+                .tag("to", next.name().toLowerCase())
+                .register(meterRegistry)
+                .increment();
+        if (next == State.OPEN) {
+            logger.warn("OCR circuit breaker '{}' opened, calls are rejected for {} ms", name, openMs);
+        } else {
+            logger.info("OCR circuit breaker '{}' changed from {} to {}", name, previous, next);
+        }
+    }
+
+    /**
+     * Một lời gọi đã được phép; báo kết quả bằng một trong ba phương thức, các lần báo sau bị bỏ qua.
+     */
+    public final class Call {
+        private final long callEpoch;
+        private boolean completed;
+
+        private Call(long callEpoch) {
+            this.callEpoch = callEpoch;
+        }
+
+        public void success() {
+            finish(false);
+        }
+
+        public void failure() {
+            finish(true);
+        }
+
+        // Lời gọi bị hủy hoặc lỗi không do OCR service (ví dụ 4xx): không tính vào tỉ lệ lỗi
+        public void ignore() {
+            finish(null);
+        }
+
+        private void finish(Boolean failed) {
+            synchronized (CircuitBreaker.this) {
+                if (completed) {
+                    return;
+                }
+                completed = true;
+                complete(callEpoch, failed);
+            }
+        }
+    }
+}
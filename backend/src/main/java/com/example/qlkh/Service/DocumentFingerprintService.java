@@ -0,0 +1,110 @@
+package com.example.qlkh.Service;
+
+import com.example.qlkh.Entity.DocumentFingerprint;
+import com.example.qlkh.Repository.DocumentFingerprintRepository;
+import com.example.qlkh.Repository.DocumentRepository;
+import com.example.qlkh.Similarity.Fingerprints;
+import com.example.qlkh.Similarity.TextNormalizer;
+import com.example.qlkh.Similarity.TextSimilarity;
+import com.example.qlkh.dto.DocumentTextView;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.qlkh.Controller.OCRController.logger;
+
+@Service
+public class DocumentFingerprintService {
+
+    private static final int BACKFILL_BATCH_SIZE = 200;
+
+    private final DocumentFingerprintRepository fingerprintRepository;
+    private final DocumentRepository documentRepository;
+    private final TextNormalizer normalizer;
+    private final TokenDictionaryService tokenDictionaryService;
+
+    public DocumentFingerprintService(DocumentFingerprintRepository fingerprintRepository,
+                                      DocumentRepository documentRepository,
+                                      TextNormalizer normalizer,
+                                      TokenDictionaryService tokenDictionaryService) {
+        this.fingerprintRepository = fingerprintRepository;
+        this.documentRepository = documentRepository;
+        this.normalizer = normalizer;
+        this.tokenDictionaryService = tokenDictionaryService;
+    }
+
+    /**
+     * Tính fingerprint từ văn bản đã trích xuất (chưa lưu); từ mới được thêm vào từ điển.
+     * Chỉ tạo String cho từng từ khi văn bản có từ chưa có trong từ điển.
+     */
+    public DocumentFingerprint compute(Integer documentId, String extractedText) {
+        long[] wordHashes = normalizer.hashes(extractedText);
+        int[] tokenIds = tokenDictionaryService.intern(wordHashes, () -> normalizer.words(extractedText));
+
+        DocumentFingerprint fingerprint = new DocumentFingerprint();
+        fingerprint.setDocumentId(documentId);
+        fingerprint.setVersion(Fingerprints.version(normalizer));
+        fingerprint.setRawWordCount(TextSimilarity.countWords(extractedText));
+        fingerprint.setTokenIds(Fingerprints.packInts(tokenIds));
+        fingerprint.setTokenSet(Fingerprints.packInts(Fingerprints.distinct(tokenIds)));
+        fingerprint.setShingleHashes(Fingerprints.pack(Fingerprints.shingleHashes(wordHashes)));
+        return fingerprint;
+    }
+
+    /**
+     * Thêm các từ chưa có của văn bản vào từ điển; gọi trước transaction lưu tài liệu.
+     */
+    public void internTokens(String extractedText) {
+        tokenDictionaryService.intern(normalizer.hashes(extractedText), () -> normalizer.words(extractedText));
+    }
+
+    /**
+     * Tính và lưu fingerprint khi tài liệu được tải lên.
+     */
+    public DocumentFingerprint save(Integer documentId, String extractedText) {
+        return fingerprintRepository.save(compute(documentId, extractedText));
+    }
+
+    /**
+     * Xóa toàn bộ fingerprint để job backfill tính lại (khi id token đã lưu không còn khớp từ điển).
+     */
+    public void deleteAll() {
+        fingerprintRepository.deleteAllInBatch();
+    }
+
+    public void delete(Integer documentId) {
+        if (fingerprintRepository.existsById(documentId)) {
+            fingerprintRepository.deleteById(documentId);
+        }
+    }
+
+    /**
+     * Tính fingerprint cho các tài liệu cũ chưa có hoặc có phiên bản fingerprint cũ.
+     * Chỉ job này đọc cột extracted_text, theo từng lô.
+     * @return Số tài liệu đã xử lý.
+     */
+    public int backfill() {
+        int processed = 0;
+        List<Integer> ids;
+        do {
+            ids = fingerprintRepository.findDocumentIdsMissingFingerprint(
+                    Fingerprints.version(normalizer), PageRequest.of(0, BACKFILL_BATCH_SIZE));
+            if (ids.isEmpty()) {
+                break;
+            }
+            List<DocumentFingerprint> batch = new ArrayList<>();
+            for (DocumentTextView document : documentRepository.findProjectedByIdIn(ids)) {
+                batch.add(compute(document.getId(), document.getExtractedText()));
+            }
+            fingerprintRepository.saveAll(batch);
+            processed += batch.size();
+        } while (ids.size() == BACKFILL_BATCH_SIZE);
+
+        if (processed > 0) {
+            logger.info("Backfilled fingerprints for {} documents.", processed);
+        }
+        return processed;
+    }
+}
@@ -0,0 +1,660 @@
+package com.example.qlkh.Service;
+
+import com.example.qlkh.Entity.Document;
+import com.example.qlkh.Entity.DocumentPage;
+import com.example.qlkh.Entity.IngestionJob;
+import com.example.qlkh.Entity.IngestionJobFile;
+import com.example.qlkh.Exception.OcrOverloadedException;
+import com.example.qlkh.Repository.DocumentPageRepository;
+import com.example.qlkh.Repository.DocumentRepository;
+import com.example.qlkh.Repository.IngestionJobFileRepository;
+import com.example.qlkh.Repository.IngestionJobRepository;
+import com.example.qlkh.dto.DocumentDTO;
+import com.example.qlkh.dto.IngestionJobDTO;
+import com.example.qlkh.dto.PageCountView;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.example.qlkh.Controller.OCRController.logger;
+
+/**
+ * Nhập tài liệu chạy nền: request tải lên chỉ lưu file và tạo công việc trong bảng ingestion_jobs,
+ * một nhóm worker lấy công việc từ bảng này, gọi OCR và lưu tài liệu cho từng file.
+ * Trạng thái được lưu theo từng file, nên sau khi khởi động lại chỉ các file chưa xong được xử lý tiếp.
+ * File PDF được OCR theo từng trang, mỗi trang lưu vào document_pages ngay khi xong: có thể tìm kiếm trước khi
+ * cả file xong, và khi chạy lại (khởi động lại hoặc {@link #retry}) chỉ các trang chưa xong được OCR lại.
+ */
+@Service
+public class DocumentIngestionService {
+
+    private final IngestionJobRepository jobRepository;
+    private final IngestionJobFileRepository fileRepository;
+    private final DocumentRepository documentRepository;
+    private final DocumentPageRepository pageRepository;
+    private final DocumentService documentService;
+    private final DocumentSimilarityService documentSimilarityService;
+    private final FileStorageService fileStorage;
+    private final OcrClient ocrClient;
+    private final OcrResultCache ocrResultCache;
+    private final CircuitBreaker ocrCircuitBreaker;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService workers;
+    private final int workerCount;
+    private final AtomicInteger runningJobs = new AtomicInteger();
+    private final Path stagingDir;
+    private final Counter rejectedJobs;
+
+    // Số công việc chờ tối đa; 0 = không giới hạn
+    @Value("${ingestion.max-queued-jobs:50}")
+    private long maxQueuedJobs;
+
+    @Value("${ocr.bulkhead.retry-after-seconds:5}")
+    private long retryAfterSeconds;
+
+    // Chỉ nhận công việc sau khi đã khôi phục công việc dở dang và dựng xong chỉ mục so sánh
+    private volatile boolean started;
+
+    public DocumentIngestionService(IngestionJobRepository jobRepository,
+                                    IngestionJobFileRepository fileRepository,
+                                    DocumentRepository documentRepository,
+                                    DocumentPageRepository pageRepository,
+                                    DocumentService documentService,
+                                    DocumentSimilarityService documentSimilarityService,
+                                    FileStorageService fileStorage,
+                                    OcrClient ocrClient,
+                                    OcrResultCache ocrResultCache,
+                                    @Qualifier("ocrCircuitBreaker") CircuitBreaker ocrCircuitBreaker,
+                                    PlatformTransactionManager transactionManager,
+                                    @Value("${ingestion.workers:2}") int workerCount,
+                                    @Value("${file.upload.dir}") String uploadDir,
+                                    MeterRegistry meterRegistry) {
+        this.jobRepository = jobRepository;
+        this.fileRepository = fileRepository;
+        this.documentRepository = documentRepository;
+        this.pageRepository = pageRepository;
+        this.documentService = documentService;
+        this.documentSimilarityService = documentSimilarityService;
+        this.fileStorage = fileStorage;
+        this.ocrClient = ocrClient;
+        this.ocrResultCache = ocrResultCache;
+        this.ocrCircuitBreaker = ocrCircuitBreaker;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.workerCount = Math.max(1, workerCount);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(this.workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "ingestion-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.stagingDir = Path.of(uploadDir).toAbsolutePath().resolve("ingest");
+        Gauge.builder("ingestion.jobs.running", runningJobs, AtomicInteger::get)
+                .description("Ingestion jobs currently being processed")
+                .register(meterRegistry);
+        this.rejectedJobs = Counter.builder("ingestion.jobs.rejected")
+                .description("Uploads rejected because too many ingestion jobs were waiting")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Đưa công việc đang chạy dở khi ứng dụng dừng về hàng đợi rồi bắt đầu nhận công việc.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void start() {
+        Integer[] recovered = transactionTemplate.execute(status -> new Integer[]{
+                jobRepository.updateStatus(IngestionJob.Status.RUNNING, IngestionJob.Status.QUEUED),
+                fileRepository.updateStatus(IngestionJobFile.Status.PROCESSING, IngestionJobFile.Status.PENDING)
+        });
+        if (recovered[0] > 0) {
+            logger.info("Requeued {} interrupted ingestion jobs ({} files).", recovered[0], recovered[1]);
+        }
+        started = true;
+        dispatch();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        // File đang xử lý giữ trạng thái PROCESSING và được xử lý lại ở lần khởi động sau
+        workers.shutdownNow();
+    }
+
+    /**
+     * Lưu các file vào thư mục tạm trong file.upload.dir và tạo công việc nhập tài liệu.
+     * File rỗng hoặc sai định dạng được ghi nhận là SKIPPED.
+     * @return Công việc vừa tạo, hoặc empty nếu không có file hợp lệ nào.
+     * @throws OcrOverloadedException Khi đã có ingestion.max-queued-jobs công việc đang chờ (503 kèm Retry-After).
+     */
+    public Optional<IngestionJobDTO> enqueue(List<MultipartFile> files, List<Integer> authorIds) throws IOException {
+        // Từ chối trước khi ghi file xuống đĩa
+        if (maxQueuedJobs > 0 && jobRepository.countByStatus(IngestionJob.Status.QUEUED) >= maxQueuedJobs) {
+            rejectedJobs.increment();
+            throw new OcrOverloadedException(HttpStatus.SERVICE_UNAVAILABLE, retryAfterSeconds,
+                    "Too many documents are waiting for OCR, please retry later");
+        }
+        Files.createDirectories(stagingDir);
+        List<IngestionJobFile> jobFiles = new ArrayList<>();
+        IngestionJobDTO job;
+        try {
+            for (MultipartFile file : files) {
+                String originalFileName = file.getOriginalFilename();
+                IngestionJobFile jobFile = new IngestionJobFile();
+                jobFile.setPosition(jobFiles.size());
+                jobFile.setFileName(originalFileName == null ? "" : originalFileName);
+                jobFile.setFileSize(file.getSize());
+                jobFiles.add(jobFile);
+
+                if (file.isEmpty()) {
+                    logger.warn("File is empty: {}", originalFileName);
+                    skip(jobFile, "File is empty");
+                } else if (originalFileName == null || !isSupportedFileType(originalFileName)) {
+                    logger.warn("Unsupported file type: {}", originalFileName);
+                    skip(jobFile, "Unsupported file type");
+                } else {
+                    Path target = stagingDir.resolve(UUID.randomUUID() + getFileExtension(originalFileName));
+                    jobFile.setStoredPath(target.toString());
+                    jobFile.setContentHash(copyWithHash(file, target));
+                }
+            }
+            if (jobFiles.stream().allMatch(f -> f.getStatus() == IngestionJobFile.Status.SKIPPED)) {
+                return Optional.empty();
+            }
+
+            job = transactionTemplate.execute(status -> {
+                IngestionJob saved = new IngestionJob();
+                saved.setAuthorIds(authorIds.stream().map(String::valueOf).collect(Collectors.joining(",")));
+                saved = jobRepository.save(saved);
+                for (IngestionJobFile jobFile : jobFiles) {
+                    jobFile.setJobId(saved.getId());
+                }
+                return toDTO(saved, fileRepository.saveAll(jobFiles), Map.of());
+            });
+        } catch (IOException | RuntimeException e) {
+            // Chưa tạo được công việc: xóa các file đã ghi
+            jobFiles.forEach(DocumentIngestionService::deleteStagedFile);
+            throw e;
+        }
+        logger.info("Ingestion job {} queued with {} files.", job.getId(), job.getTotalFiles());
+        dispatch();
+        return Optional.of(job);
+    }
+
+    public Optional<IngestionJobDTO> getJob(Long jobId) {
+        return jobRepository.findById(jobId).map(job -> {
+            List<IngestionJobFile> files = fileRepository.findByJobIdOrderByPositionAsc(jobId);
+            return toDTO(job, files, countDonePages(files));
+        });
+    }
+
+    /**
+     * Đưa các file lỗi của công việc đã kết thúc về hàng đợi; với PDF chỉ các trang lỗi được OCR lại.
+     * @return Công việc sau khi đưa lại vào hàng đợi, hoặc empty nếu không có công việc.
+     * @throws IllegalStateException Khi công việc chưa kết thúc hoặc không có file lỗi nào.
+     */
+    public Optional<IngestionJobDTO> retry(Long jobId) {
+        Optional<IngestionJobDTO> job = transactionTemplate.execute(status -> jobRepository.findById(jobId).map(saved -> {
+            if (saved.getStatus() != IngestionJob.Status.COMPLETED && saved.getStatus() != IngestionJob.Status.FAILED) {
+                throw new IllegalStateException("Ingestion job " + jobId + " is still " + saved.getStatus());
+            }
+            List<IngestionJobFile> files = fileRepository.findByJobIdOrderByPositionAsc(jobId);
+            List<IngestionJobFile> failed = files.stream()
+                    .filter(f -> f.getStatus() == IngestionJobFile.Status.FAILED)
+                    .toList();
+            if (failed.isEmpty()) {
+                throw new IllegalStateException("Ingestion job " + jobId + " has no failed files");
+            }
+            for (IngestionJobFile file : failed) {
+                file.setStatus(IngestionJobFile.Status.PENDING);
+                file.setError(null);
+            }
+            fileRepository.saveAll(failed);
+            saved.setStatus(IngestionJob.Status.QUEUED);
+            saved.setError(null);
+            saved.setFinishedAt(null);
+            return toDTO(jobRepository.save(saved), files, countDonePages(files));
+        }));
+        job.ifPresent(retried -> {
+            logger.info("Ingestion job {} requeued for retry.", jobId);
+            dispatch();
+        });
+        return job;
+    }
+
+    /**
+     * Lấy công việc đang chờ theo thứ tự tạo, tối đa bằng số worker còn rảnh.
+     * Khi mạch OCR đang mở, công việc được giữ trong hàng đợi thay vì chạy rồi lỗi ở mọi file.
+     */
+    @Scheduled(fixedDelayString = "${ingestion.poll-interval-ms:1000}")
+    public synchronized void dispatch() {
+        if (!started || ocrCircuitBreaker.isOpen()) {
+            return;
+        }
+        int free = workerCount - runningJobs.get();
+        if (free <= 0) {
+            return;
+        }
+        for (Long jobId : jobRepository.findIdsByStatus(IngestionJob.Status.QUEUED, PageRequest.of(0, free))) {
+            Integer claimed = transactionTemplate.execute(status -> jobRepository.claim(
+                    jobId, IngestionJob.Status.QUEUED, IngestionJob.Status.RUNNING, LocalDateTime.now()));
+            if (claimed == null || claimed == 0) {
+                continue;
+            }
+            runningJobs.incrementAndGet();
+            workers.execute(() -> {
+                try {
+                    runJob(jobId);
+                } finally {
+                    runningJobs.decrementAndGet();
+                }
+            });
+        }
+    }
+
+    private void runJob(Long jobId) {
+        try {
+            IngestionJob job = jobRepository.findById(jobId).orElseThrow();
+            List<Integer> authorIds = parseAuthorIds(job.getAuthorIds());
+
+            // Gửi mọi file tới OCR cùng lúc (số request đồng thời do pool kết nối OCR giới hạn),
+            // rồi lưu tài liệu theo thứ tự file ban đầu
+            List<IngestionJobFile> processing = new ArrayList<>();
+            for (IngestionJobFile file : fileRepository.findByJobIdAndStatusOrderByPositionAsc(
+                    jobId, IngestionJobFile.Status.PENDING)) {
+                processing.add(markProcessing(file));
+            }
+            List<CompletableFuture<String>> texts = submitOcr(processing);
+            for (int i = 0; i < processing.size(); i++) {
+                if (!saveFile(processing.get(i), texts.get(i), authorIds)) {
+                    // Ứng dụng đang dừng: file chưa xong giữ trạng thái PROCESSING để chạy lại lần sau
+                    texts.forEach(text -> text.cancel(true));
+                    return;
+                }
+            }
+
+            List<IngestionJobFile> files = fileRepository.findByJobIdOrderByPositionAsc(jobId);
+            boolean anyDone = files.stream().anyMatch(f -> f.getStatus() == IngestionJobFile.Status.DONE);
+            job.setStatus(anyDone ? IngestionJob.Status.COMPLETED : IngestionJob.Status.FAILED);
+            job.setError(anyDone ? null : "No file could be processed");
+            job.setFinishedAt(LocalDateTime.now());
+            jobRepository.save(job);
+            logger.info("Ingestion job {} finished with status {}.", jobId, job.getStatus());
+        } catch (Exception e) {
+            logger.error("Ingestion job {} failed: {}", jobId, e.getMessage(), e);
+            jobRepository.findById(jobId).ifPresent(job -> {
+                job.setStatus(IngestionJob.Status.FAILED);
+                job.setError(e.getMessage());
+                job.setFinishedAt(LocalDateTime.now());
+                jobRepository.save(job);
+            });
+        }
+    }
+
+    private IngestionJobFile markProcessing(IngestionJobFile file) {
+        file.setStatus(IngestionJobFile.Status.PROCESSING);
+        file.setAttempts(file.getAttempts() + 1);
+        return fileRepository.save(file);
+    }
+
+    /**
+     * File nhỏ được gom thành lô, mỗi lô là một request tới OCR service; mỗi file nhận Future văn bản của riêng nó.
+     * File có nội dung trùng tài liệu đã có không được OCR (Future trả về null), file trùng một file đứng trước
+     * trong cùng công việc dùng chung Future với file đó, file có trong cache OCR dùng kết quả đã lưu.
+     */
+    private List<CompletableFuture<String>> submitOcr(List<IngestionJobFile> files) {
+        List<CompletableFuture<String>> texts = new ArrayList<>(Collections.nCopies(files.size(), null));
+        Set<String> knownHashes = new HashSet<>(documentRepository.findContentHashesIn(files.stream()
+                .map(IngestionJobFile::getContentHash)
+                .filter(Objects::nonNull)
+                .toList()));
+        Map<String, Integer> firstByHash = new HashMap<>();
+        Map<Integer, Integer> duplicateOf = new HashMap<>();
+        List<Integer> available = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            String hash = files.get(i).getContentHash();
+            if (hash != null && knownHashes.contains(hash)) {
+                texts.set(i, CompletableFuture.completedFuture(null));
+            } else if (hash != null && firstByHash.containsKey(hash)) {
+                duplicateOf.put(i, firstByHash.get(hash));
+            } else if (Files.exists(Path.of(files.get(i).getStoredPath()))) {
+                if (hash != null) {
+                    firstByHash.put(hash, i);
+                }
+                IngestionJobFile file = files.get(i);
+                Optional<OcrClient.OcrResult> cached = ocrResultCache.get(hash);
+                if (cached.isPresent()) {
+                    logger.info("Using cached OCR result for file {}", file.getFileName());
+                    if (isPdf(file)) {
+                        storeCachedPages(file, cached.get());
+                    }
+                    texts.set(i, CompletableFuture.completedFuture(cached.get().text()));
+                } else if (isPdf(file)) {
+                    texts.set(i, ocrPages(file));
+                } else {
+                    available.add(i);
+                }
+            } else {
+                texts.set(i, CompletableFuture.failedFuture(
+                        new IllegalStateException("Uploaded file is no longer available")));
+            }
+        }
+
+        long[] sizes = available.stream()
+                .mapToLong(i -> Objects.requireNonNullElse(files.get(i).getFileSize(), 0L))
+                .toArray();
+        for (List<Integer> batch : ocrClient.planBatches(sizes)) {
+            List<IngestionJobFile> batchFiles = batch.stream().map(k -> files.get(available.get(k))).toList();
+            logger.info("Processing files: {}", batchFiles.stream().map(IngestionJobFile::getFileName).toList());
+            CompletableFuture<List<OcrClient.OcrResult>> results = ocrClient.recognizeAsync(batchFiles.stream()
+                            .map(file -> new FileSystemResource(file.getStoredPath()))
+                            .toList())
+                    .thenApply(batchResults -> {
+                        for (int k = 0; k < batchFiles.size(); k++) {
+                            ocrResultCache.put(batchFiles.get(k).getContentHash(), batchResults.get(k));
+                        }
+                        return batchResults;
+                    });
+            for (int k = 0; k < batch.size(); k++) {
+                int index = k;
+                texts.set(available.get(batch.get(k)), results.thenApply(result -> result.get(index).text()));
+            }
+        }
+        duplicateOf.forEach((duplicate, first) -> texts.set(duplicate, texts.get(first)));
+        return texts;
+    }
+
+    /**
+     * OCR file PDF theo trang, lưu từng trang ngay khi OCR service trả về.
+     * Trang đã xong ở lần chạy trước được dùng lại; file chỉ xong khi mọi trang đã xong.
+     * @return Văn bản của file, các trang cách nhau bởi xuống dòng.
+     */
+    private CompletableFuture<String> ocrPages(IngestionJobFile file) {
+        Map<Integer, DocumentPage> pages = new TreeMap<>();
+        for (DocumentPage page : pageRepository.findByJobFileIdOrderByPageNumberAsc(file.getId())) {
+            pages.put(page.getPageNumber(), page);
+        }
+        List<Integer> missing = file.getTotalPages() == null
+                ? List.of()
+                : IntStream.rangeClosed(1, file.getTotalPages())
+                        .filter(page -> !pages.containsKey(page) || pages.get(page).getStatus() != DocumentPage.Status.DONE)
+                        .boxed()
+                        .toList();
+        if (file.getTotalPages() != null && missing.isEmpty()) {
+            return CompletableFuture.completedFuture(pagesText(file, pages));
+        }
+        logger.info("Processing file {} by page: {}", file.getFileName(), missing.isEmpty() ? "all pages" : missing);
+        return ocrClient.recognizePagesAsync(new FileSystemResource(file.getStoredPath()), missing, new OcrClient.PageListener() {
+            @Override
+            public void onPageCount(int count) {
+                file.setTotalPages(count);
+                fileRepository.save(file);
+            }
+
+            @Override
+            public void onPage(int page, String text, String error) {
+                pages.put(page, savePage(file, pages.get(page), page, text, error));
+            }
+        }).thenApply(done -> pagesText(file, pages));
+    }
+
+    private String pagesText(IngestionJobFile file, Map<Integer, DocumentPage> pages) {
+        int total = Objects.requireNonNullElse(file.getTotalPages(), 0);
+        List<Integer> failed = IntStream.rangeClosed(1, total)
+                .filter(page -> !pages.containsKey(page) || pages.get(page).getStatus() != DocumentPage.Status.DONE)
+                .boxed()
+                .toList();
+        if (!failed.isEmpty()) {
+            throw new RuntimeException("OCR failed for pages " + failed + " of " + total);
+        }
+        OcrClient.OcrResult result = new OcrClient.OcrResult(pages.values().stream()
+                .<Map<String, Object>>map(page -> Map.of("page", page.getPageNumber(), "text", page.getText()))
+                .toList());
+        ocrResultCache.put(file.getContentHash(), result);
+        return result.text();
+    }
+
+    private DocumentPage savePage(IngestionJobFile file, DocumentPage page, int pageNumber, String text, String error) {
+        if (page == null) {
+            page = new DocumentPage();
+            page.setJobFileId(file.getId());
+            page.setPageNumber(pageNumber);
+        }
+        page.setText(text);
+        page.setStatus(text == null ? DocumentPage.Status.FAILED : DocumentPage.Status.DONE);
+        page.setError(text == null ? error : null);
+        if (text == null) {
+            logger.warn("OCR failed for page {} of file {}: {}", pageNumber, file.getFileName(), error);
+        }
+        return pageRepository.save(page);
+    }
+
+    // Kết quả trong cache của PDF là danh sách trang theo thứ tự
+    private void storeCachedPages(IngestionJobFile file, OcrClient.OcrResult cached) {
+        Map<Integer, DocumentPage> pages = new HashMap<>();
+        for (DocumentPage page : pageRepository.findByJobFileIdOrderByPageNumberAsc(file.getId())) {
+            pages.put(page.getPageNumber(), page);
+        }
+        List<Map<String, Object>> entries = cached.getEntries();
+        file.setTotalPages(entries.size());
+        fileRepository.save(file);
+        for (int i = 0; i < entries.size(); i++) {
+            savePage(file, pages.get(i + 1), i + 1, String.valueOf(entries.get(i).get("text")), null);
+        }
+    }
+
+    /**
+     * Chờ kết quả OCR của file và lưu tài liệu; lỗi của file được ghi lại mà không dừng cả công việc.
+     * @return false nếu luồng bị ngắt trong lúc chờ.
+     */
+    private boolean saveFile(IngestionJobFile file, CompletableFuture<String> text, List<Integer> authorIds) {
+        try {
+            String extractedText = text.get();
+            if (extractedText != null) {
+                logger.info("Extracted {} characters for file {}", extractedText.length(), file.getFileName());
+            }
+            // File của công việc tạo trước khi có hash: tính hash từ file tạm để vẫn chống trùng và lưu vào kho theo nội dung
+            if (file.getContentHash() == null) {
+                if (file.getStoredPath() == null) {
+                    throw new IllegalStateException("The uploaded file is no longer available, upload the file again");
+                }
+                file.setContentHash(ContentHash.of(Files.newInputStream(Path.of(file.getStoredPath()))));
+            }
+
+            if (extractedText != null) {
+                // Lưu từ mới trước: trong transaction lưu tài liệu chỉ tra id từ điển, không mở kết nối thứ hai
+                documentSimilarityService.internTokens(extractedText);
+            }
+            try {
+                saveDocument(file, extractedText, authorIds);
+            } catch (DataIntegrityViolationException e) {
+                // content_hash là unique: công việc khác vừa lưu cùng nội dung và đã commit, lần này dùng tài liệu đó
+                logger.info("File {} was saved by another job at the same time, reusing its document.", file.getFileName());
+                saveDocument(file, extractedText, authorIds);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+            logger.error("Error ingesting file {}: {}", file.getFileName(), cause.getMessage(), cause);
+            file.setStatus(IngestionJobFile.Status.FAILED);
+            file.setError(cause.getMessage());
+            fileRepository.save(file);
+            // Giữ file tạm để có thể thử lại
+            return true;
+        }
+        deleteStagedFile(file);
+        return true;
+    }
+
+    // Lưu tài liệu và đánh dấu file đã xong trong cùng transaction để không tạo trùng tài liệu khi chạy lại
+    private void saveDocument(IngestionJobFile file, String extractedText, List<Integer> authorIds) {
+        transactionTemplate.executeWithoutResult(status -> {
+            // Kiểm tra lại trong transaction: công việc khác có thể vừa lưu cùng nội dung
+            Optional<Document> existing = file.getContentHash() == null
+                    ? Optional.empty()
+                    : documentRepository.findFirstByContentHashOrderByIdAsc(file.getContentHash());
+            if (existing.isPresent()) {
+                DocumentDTO document = documentService.addAuthors(existing.get().getId(), authorIds);
+                logger.info("File {} has the same content as document {}, reusing it.",
+                        file.getFileName(), document.getId());
+                // Trang đã OCR của file này trùng với trang của tài liệu đã có
+                pageRepository.deleteByJobFileId(file.getId());
+                file.setDocumentId(document.getId());
+                file.setDeduplicated(true);
+                file.setStatus(IngestionJobFile.Status.DONE);
+                file.setError(null);
+                fileRepository.save(file);
+                return;
+            }
+            if (extractedText == null) {
+                throw new IllegalStateException("The document with the same content was deleted, upload the file again");
+            }
+
+            DocumentDTO documentDTO = new DocumentDTO();
+            documentDTO.setFileName(file.getFileName());
+            documentDTO.setFilePath(storeFile(file));
+            documentDTO.setAuthorIds(authorIds);
+            documentDTO.setExtractedText(extractedText);
+            documentDTO.setContentHash(file.getContentHash());
+
+            DocumentDTO savedDocument = documentService.uploadDocument(documentDTO);
+            logger.info("Document saved with ID: {}", savedDocument.getId());
+            pageRepository.assignDocument(file.getId(), savedDocument.getId());
+            file.setDocumentId(savedDocument.getId());
+            file.setStatus(IngestionJobFile.Status.DONE);
+            file.setError(null);
+            fileRepository.save(file);
+        });
+    }
+
+    // Chuyển file tạm vào kho file của tài liệu; file tạm bị xóa sau khi lưu xong
+    private String storeFile(IngestionJobFile file) {
+        try {
+            return fileStorage.store(Path.of(file.getStoredPath()), file.getContentHash());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not store file " + file.getFileName(), e);
+        }
+    }
+
+    // Ghi file xuống đĩa và tính SHA-256 trong cùng một lượt đọc
+    private static String copyWithHash(MultipartFile file, Path target) throws IOException {
+        MessageDigest sha256 = ContentHash.newDigest();
+        try (InputStream in = new DigestInputStream(file.getInputStream(), sha256)) {
+            FileStorageService.write(in, target);
+        }
+        return ContentHash.hex(sha256);
+    }
+
+    private static void skip(IngestionJobFile jobFile, String reason) {
+        jobFile.setStatus(IngestionJobFile.Status.SKIPPED);
+        jobFile.setError(reason);
+    }
+
+    private static void deleteStagedFile(IngestionJobFile jobFile) {
+        if (jobFile.getStoredPath() == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(Path.of(jobFile.getStoredPath()));
+        } catch (IOException e) {
+            logger.warn("Could not delete staged file {}: {}", jobFile.getStoredPath(), e.getMessage());
+        }
+    }
+
+    private static List<Integer> parseAuthorIds(String authorIds) {
+        if (authorIds == null || authorIds.isEmpty()) {
+            return List.of();
+        }
+        return Arrays.stream(authorIds.split(",")).map(Integer::valueOf).toList();
+    }
+
+    private static boolean isPdf(IngestionJobFile file) {
+        return file.getFileName().toLowerCase().endsWith(".pdf");
+    }
+
+    private Map<Long, Long> countDonePages(List<IngestionJobFile> files) {
+        List<Long> ids = files.stream()
+                .filter(f -> f.getTotalPages() != null)
+                .map(IngestionJobFile::getId)
+                .toList();
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        return pageRepository.countByJobFileIds(ids, DocumentPage.Status.DONE).stream()
+                .collect(Collectors.toMap(PageCountView::getJobFileId, PageCountView::getPages));
+    }
+
+    private static boolean isSupportedFileType(String fileName) {
+        return fileName.endsWith(".pdf") || fileName.endsWith(".docx") || fileName.endsWith(".doc")
+                || fileName.endsWith(".txt") || fileName.endsWith(".png") || fileName.endsWith(".jpg");
+    }
+
+    private static String getFileExtension(String fileName) {
+        int lastIndex = fileName.lastIndexOf(".");
+        return lastIndex != -1 ? fileName.substring(lastIndex) : "";
+    }
+
+    private static IngestionJobDTO toDTO(IngestionJob job, List<IngestionJobFile> files, Map<Long, Long> donePages) {
+        List<IngestionJobDTO.FileStatus> statuses = files.stream()
+                .map(f -> new IngestionJobDTO.FileStatus(f.getPosition(), f.getFileName(), f.getStatus().name(),
+                        f.getAttempts(), f.getDocumentId(), f.isDeduplicated(), f.getTotalPages(),
+                        donePages.getOrDefault(f.getId(), 0L).intValue(), f.getError()))
+                .toList();
+        int total = (int) files.stream().filter(f -> f.getStatus() != IngestionJobFile.Status.SKIPPED).count();
+        int completed = (int) files.stream().filter(f -> f.getStatus() == IngestionJobFile.Status.DONE).count();
+        int failed = (int) files.stream().filter(f -> f.getStatus() == IngestionJobFile.Status.FAILED).count();
+        int deduplicated = (int) files.stream().filter(IngestionJobFile::isDeduplicated).count();
+        return new IngestionJobDTO(job.getId(), job.getStatus().name(), total, completed, failed, deduplicated,
+                job.getError(),
+                String.valueOf(job.getCreatedAt()), toString(job.getStartedAt()), toString(job.getFinishedAt()),
+                statuses);
+    }
+
+    private static String toString(LocalDateTime time) {
+        return time == null ? null : time.toString();
+    }
+}
@@ -1,6 +1,8 @@
 package com.example.qlkh.Service;
 
 import com.example.qlkh.dto.DocumentDTO;
+import com.example.qlkh.dto.DocumentFileView;
+import com.example.qlkh.dto.DocumentPageDTO;
 
 import java.util.List;
 
@@ -12,12 +14,21 @@ public interface DocumentService {
     // Thêm tài liệu mới
     DocumentDTO uploadDocument(DocumentDTO documentDTO);
 
+    // Thêm tác giả cho tài liệu đã có (khi cùng file được tải lên lại)
+    DocumentDTO addAuthors(Integer documentId, List<Integer> authorIds);
+
     // Xóa tài liệu
     boolean deleteDocument(Integer documentId);
 
     // Lấy chi tiết tài liệu
     DocumentDTO getDocumentById(Integer documentId);
 
-    // Lấy đường dẫn file để tải xuống
-    String getDocumentFilePathById(Integer documentId);
+    // Lấy đường dẫn, tên và hash của file để tải xuống
+    DocumentFileView getDocumentFileById(Integer documentId);
+
+    // Lấy văn bản từng trang của tài liệu
+    List<DocumentPageDTO> getDocumentPages(Integer documentId);
+
+    // Tìm các trang chứa đoạn văn bản, gồm cả trang của file đang được nhập
+    List<DocumentPageDTO> searchPages(String query, int limit);
 }
@@ -0,0 +1,665 @@
+package com.example.qlkh.Service;
+
+import com.example.qlkh.Entity.DocumentFingerprint;
+import com.example.qlkh.Repository.DocumentFingerprintRepository;
+import com.example.qlkh.Similarity.ExpiringLruCache;
+import com.example.qlkh.Similarity.Fingerprints;
+import com.example.qlkh.Similarity.InvertedIndex;
+import com.example.qlkh.Similarity.MinHashLshIndex;
+import com.example.qlkh.Similarity.TextNormalizer;
+import com.example.qlkh.Similarity.TextSimilarity;
+import com.example.qlkh.Similarity.TokenDictionary;
+import com.example.qlkh.Similarity.TopK;
+import com.example.qlkh.dto.FingerprintView;
+import com.example.qlkh.dto.SimilarityResultDTO;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static com.example.qlkh.Controller.OCRController.logger;
+
+@Service
+public class DocumentSimilarityService {
+
+    // Ngưỡng số từ giống calculate_similarity của Python service
+    private static final int MIN_OCR_WORDS = 5;
+
+    private static final int REBUILD_BATCH_SIZE = 200;
+
+    // Số ứng viên tối đa của một nhánh chấm điểm trước khi chia đôi
+    private static final int SCORING_SPLIT_SIZE = 64;
+
+    // Số ứng viên mỗi lô khi so sánh dạng stream
+    private static final int STREAM_BATCH_SIZE = 256;
+
+    // Số mẫu đo recall chờ chạy tối đa; hàng đợi đầy thì bỏ mẫu mới
+    private static final int RECALL_QUEUE_SIZE = 4;
+
+    // Giống results.sort(reverse=True) của Python trên danh sách theo thứ tự id
+    private static final Comparator<Hit> HIT_RANKING =
+            Comparator.<Hit>comparingDouble(hit -> hit.score).reversed()
+                    .thenComparingInt(hit -> hit.documentId);
+
+    private final DocumentFingerprintRepository fingerprintRepository;
+    private final DocumentFingerprintService fingerprintService;
+    private final MinHashLshIndex lshIndex;
+    private final TextNormalizer normalizer;
+    private final TokenDictionary tokenDictionary;
+    private final TokenDictionaryService tokenDictionaryService;
+    private final InvertedIndex invertedIndex;
+    private final ForkJoinPool scoringPool;
+    private final ExecutorService recallExecutor;
+    private final ExpiringLruCache<String, List<SimilarityResultDTO>> compareCache;
+
+    // Tăng sau mỗi lần thêm/xóa tài liệu khỏi chỉ mục (sau khi chỉ mục đã đổi, tức là sau commit);
+    // kết quả cache của phiên bản cũ không còn được đọc
+    private final AtomicLong corpusVersion = new AtomicLong();
+
+    @Value("${similarity.lsh.enabled:true}")
+    private boolean lshEnabled;
+
+    // Tỉ lệ truy vấn được chấm thêm toàn bộ để đo recall của LSH
+    @Value("${similarity.lsh.recall-sample-rate:0.05}")
+    private double recallSampleRate;
+
+    // Tài liệu có Jaccard từ ngưỡng này trở lên được tính là kết quả cần tìm thấy
+    @Value("${similarity.lsh.recall-threshold:0.2}")
+    private double recallThreshold;
+
+    // difflib (mặc định): giống hệt find_common_text của Python; seed-extend: CommonPassageFinder gần tuyến tính,
+    // nhanh hơn với tài liệu dài nhưng có thể trả về đoạn khác difflib
+    @Value("${similarity.common-text.matcher:difflib}")
+    private String commonTextMatcher;
+
+    private final AtomicLong recallQueries = new AtomicLong();
+    private final AtomicLong recallRelevant = new AtomicLong();
+    private final AtomicLong recallFound = new AtomicLong();
+
+    public DocumentSimilarityService(DocumentFingerprintRepository fingerprintRepository,
+                                     DocumentFingerprintService fingerprintService,
+                                     TextNormalizer normalizer,
+                                     TokenDictionary tokenDictionary,
+                                     TokenDictionaryService tokenDictionaryService,
+                                     @Value("${similarity.lsh.bands:64}") int bands,
+                                     @Value("${similarity.lsh.rows:2}") int rows,
+                                     @Value("${similarity.compare.parallelism:0}") int parallelism,
+                                     @Value("${similarity.compare.cache.max-entries:256}") int cacheMaxEntries,
+                                     @Value("${similarity.compare.cache.ttl-seconds:600}") long cacheTtlSeconds,
+                                     MeterRegistry meterRegistry) {
+        this.fingerprintRepository = fingerprintRepository;
+        this.fingerprintService = fingerprintService;
+        this.normalizer = normalizer;
+        this.tokenDictionary = tokenDictionary;
+        this.tokenDictionaryService = tokenDictionaryService;
+        this.invertedIndex = new InvertedIndex();
+        this.lshIndex = new MinHashLshIndex(bands, rows);
+        // 0 = số nhân CPU; pool riêng để chấm điểm không chiếm commonPool của ứng dụng
+        this.scoringPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        // Một luồng nền chấm toàn bộ để đo recall, truy vấn không phải chờ
+        this.recallExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(RECALL_QUEUE_SIZE),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "similarity-recall");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.DiscardPolicy());
+        Gauge.builder("similarity.index.memory", invertedIndex, InvertedIndex::estimatedBytes)
+                .description("Estimated heap used by the inverted word index")
+                .baseUnit("bytes")
+                .tag("index", "inverted")
+                .register(meterRegistry);
+        Gauge.builder("similarity.index.memory", tokenDictionary, TokenDictionary::estimatedBytes)
+                .description("Estimated heap used by the shared token dictionary")
+                .baseUnit("bytes")
+                .tag("index", "dictionary")
+                .register(meterRegistry);
+
+        this.compareCache = new ExpiringLruCache<>(cacheMaxEntries, cacheTtlSeconds * 1000);
+        FunctionCounter.builder("similarity.compare.cache.gets", compareCache, ExpiringLruCache::hits)
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("similarity.compare.cache.gets", compareCache, ExpiringLruCache::misses)
+                .tag("result", "miss")
+                .register(meterRegistry);
+        FunctionCounter.builder("similarity.compare.cache.evictions", compareCache, ExpiringLruCache::sizeEvictions)
+                .tag("cause", "size")
+                .register(meterRegistry);
+        FunctionCounter.builder("similarity.compare.cache.evictions", compareCache, ExpiringLruCache::expirations)
+                .tag("cause", "expired")
+                .register(meterRegistry);
+        Gauge.builder("similarity.compare.cache.size", compareCache, ExpiringLruCache::size)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Khi ứng dụng khởi động: backfill fingerprint cho tài liệu cũ rồi dựng lại chỉ mục đảo và LSH từ fingerprint.
+     * Chạy trước hàng đợi nhập tài liệu để tài liệu mới không bị mất khỏi chỉ mục đang dựng.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void rebuildIndex() {
+        // Từ điển trống (mới tạo hoặc bị xóa) thì id token trong fingerprint đã lưu không còn nghĩa: tính lại toàn bộ
+        if (tokenDictionaryService.load() == 0) {
+            fingerprintService.deleteAll();
+        }
+        fingerprintService.backfill();
+
+        lshIndex.clear();
+        invertedIndex.clear();
+        int lastId = 0;
+        List<FingerprintView> batch;
+        do {
+            batch = fingerprintRepository.findViewsAfter(lastId, PageRequest.of(0, REBUILD_BATCH_SIZE));
+            for (FingerprintView fingerprint : batch) {
+                addToIndex(fingerprint.getDocumentId(), fingerprint.getRawWordCount(), fingerprint.getTokenSet());
+                lastId = fingerprint.getDocumentId();
+            }
+        } while (batch.size() == REBUILD_BATCH_SIZE);
+        corpusVersion.incrementAndGet();
+        logger.info("Similarity index built with {} documents, {} distinct words.",
+                invertedIndex.documentCount(), invertedIndex.tokenCount());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        recallExecutor.shutdownNow();
+        scoringPool.shutdown();
+    }
+
+    /**
+     * Thêm từ mới của văn bản vào từ điển token, trước transaction gọi {@link #indexDocument}.
+     * Việc lưu từ mới dùng kết nối riêng, nên không được chạy khi đang giữ kết nối của transaction khác.
+     */
+    public void internTokens(String extractedText) {
+        fingerprintService.internTokens(extractedText);
+    }
+
+    /**
+     * Lưu fingerprint khi tài liệu được lưu; chỉ mục chỉ được cập nhật sau khi transaction commit,
+     * để phép so sánh không thấy tài liệu chưa commit (hoặc bị rollback).
+     */
+    public void indexDocument(Integer documentId, String extractedText) {
+        DocumentFingerprint fingerprint = fingerprintService.save(documentId, extractedText);
+        Integer rawWordCount = fingerprint.getRawWordCount();
+        byte[] tokenSet = fingerprint.getTokenSet();
+        afterCommit(() -> {
+            addToIndex(documentId, rawWordCount, tokenSet);
+            corpusVersion.incrementAndGet();
+        });
+    }
+
+    /**
+     * Xóa fingerprint; tài liệu bị xóa khỏi chỉ mục sau khi transaction commit.
+     */
+    public void removeDocument(Integer documentId) {
+        fingerprintService.delete(documentId);
+        afterCommit(() -> {
+            lshIndex.remove(documentId);
+            invertedIndex.remove(documentId);
+            corpusVersion.incrementAndGet();
+        });
+    }
+
+    /**
+     * So sánh văn bản OCR với các tài liệu đã lưu ngay trên backend,
+     * cho cùng điểm Jaccard và common_texts như calculate_similarity.
+     * Jaccard được tính trên tập từ trong chỉ mục đảo (không đọc DB); fingerprint đầy đủ
+     * chỉ được đọc cho top-K kết quả để tính common_texts, không đọc cột extracted_text.
+     * Chỉ các tài liệu có ít nhất một từ chung (chỉ mục đảo) mới được chấm điểm;
+     * khi bật LSH chỉ các tài liệu trùng ít nhất một band mới được chấm điểm chính xác.
+     * Việc chấm điểm chạy song song trên ForkJoinPool và chỉ giữ top-K.
+     * Kết quả được cache theo hash văn bản đã chuẩn hóa và phiên bản kho tài liệu.
+     * @param ocrText Văn bản OCR cần so sánh.
+     * @param limit Số kết quả tối đa, null nếu lấy tất cả.
+     * @param minScore Độ tương đồng tối thiểu, null nếu không lọc.
+     * @return Kết quả sắp xếp giảm dần theo độ tương đồng.
+     * @throws IllegalArgumentException Nếu dữ liệu đầu vào không hợp lệ.
+     */
+    public List<SimilarityResultDTO> compare(String ocrText, Integer limit, Double minScore) {
+        if (limit != null && limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive.");
+        }
+        // Đọc phiên bản trước khi chấm điểm: nếu kho thay đổi giữa chừng, kết quả được lưu dưới phiên bản cũ
+        long version = corpusVersion.get();
+        OcrQuery query = prepareQuery(ocrText);
+        String cacheKey = digest(query.words) + ':' + version + ':' + limit + ':' + minScore;
+        List<SimilarityResultDTO> cached = compareCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        int[] candidateIds = candidates(query);
+
+        List<Hit> hits = score(query, candidateIds,
+                limit != null ? limit : Integer.MAX_VALUE, minScore != null ? minScore : 0.0);
+        List<SimilarityResultDTO> results = Collections.unmodifiableList(toResults(query, hits));
+        compareCache.put(cacheKey, results);
+
+        if (lshEnabled && ThreadLocalRandom.current().nextDouble() < recallSampleRate) {
+            recallExecutor.execute(() -> {
+                try {
+                    measureRecall(query, candidateIds);
+                } catch (RuntimeException e) {
+                    logger.warn("LSH recall sample failed: {}", e.getMessage());
+                }
+            });
+        }
+        return results;
+    }
+
+    /**
+     * Kiểm tra văn bản OCR trước khi so sánh (dùng trước khi bắt đầu gửi kết quả dạng stream).
+     * @throws IllegalArgumentException Nếu văn bản không hợp lệ hoặc chưa có tài liệu để so sánh.
+     */
+    public void validateQuery(String ocrText) {
+        prepareQuery(ocrText);
+    }
+
+    /**
+     * So sánh và gửi dần top-k kết quả ngay khi chắc chắn, theo thứ tự giảm dần độ tương đồng.
+     * Ứng viên được xét theo cận trên Jaccard min(|Q|,|D|) / max(|Q|,|D|) giảm dần và chấm theo lô trên chỉ mục
+     * trong bộ nhớ; một kết quả được gửi khi điểm của nó lớn hơn cận trên của mọi ứng viên còn lại, và dừng sớm khi
+     * cận trên của ứng viên còn lại không thể vào top-k. Fingerprint của các kết quả sẵn sàng được đọc trước khi gửi
+     * chúng (không giữ kết nối JDBC trong lúc ghi tới client chậm); common_texts chỉ được tính cho kết quả được gửi.
+     * @param ocrText Văn bản OCR cần so sánh.
+     * @param k Số kết quả tối đa.
+     * @param minSimilarity Độ tương đồng tối thiểu.
+     * @param sink Nhận từng kết quả theo thứ tự.
+     * @throws IllegalArgumentException Nếu dữ liệu đầu vào không hợp lệ.
+     */
+    public void compareStreaming(String ocrText, int k, double minSimilarity, Consumer<SimilarityResultDTO> sink) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive.");
+        }
+        OcrQuery query = prepareQuery(ocrText);
+        int[] candidateIds = candidates(query);
+
+        // Sắp xếp ứng viên theo cận trên giảm dần
+        int querySize = query.setSize();
+        long[] ordered = new long[candidateIds.length];
+        for (int i = 0; i < candidateIds.length; i++) {
+            int documentSize = invertedIndex.distinctWordCount(candidateIds[i]);
+            double bound = documentSize <= 0 ? 0.0
+                    : (double) Math.min(querySize, documentSize) / Math.max(querySize, documentSize);
+            // Cận trên trong [0, 1] nên bit của double giữ đúng thứ tự; ghép id vào để sắp một lần
+            ordered[i] = Double.doubleToLongBits(bound) & 0xFFFFFFFF00000000L | (candidateIds[i] & 0xFFFFFFFFL);
+        }
+        Arrays.sort(ordered);
+        double[] bounds = new double[ordered.length];
+        int[] orderedIds = new int[ordered.length];
+        for (int i = 0; i < ordered.length; i++) {
+            long entry = ordered[ordered.length - 1 - i];
+            // Làm tròn lên cận trên đã bị cắt bit thấp để vẫn là cận trên hợp lệ
+            bounds[i] = Double.longBitsToDouble((entry & 0xFFFFFFFF00000000L) | 0xFFFFFFFFL);
+            orderedIds[i] = (int) entry;
+        }
+
+        TopK<Hit> top = new TopK<>(k, HIT_RANKING);
+        int scored = 0;
+        int ready = 0;
+        int emitted = 0;
+        for (int start = 0; start < orderedIds.length; start += STREAM_BATCH_SIZE) {
+            Hit worst = top.worstIfFull();
+            double threshold = worst != null ? Math.max(worst.score, minSimilarity) : minSimilarity;
+            if (bounds[start] < threshold) {
+                break;
+            }
+            int end = Math.min(orderedIds.length, start + STREAM_BATCH_SIZE);
+            for (Hit hit : score(query, Arrays.copyOfRange(orderedIds, start, end), k, minSimilarity)) {
+                top.add(hit);
+            }
+            scored = end;
+
+            // Kết quả có điểm lớn hơn cận trên của mọi ứng viên còn lại đã chắc chắn ở đúng vị trí của nó
+            double remainingBound = end < orderedIds.length ? bounds[end] : -1.0;
+            List<Hit> ranked = top.toSortedList();
+            int from = ready;
+            while (ready < ranked.size() && ranked.get(ready).score > remainingBound) {
+                ready++;
+            }
+            emitted += emit(query, ranked.subList(from, ready), sink);
+        }
+        List<Hit> ranked = top.toSortedList();
+        emitted += emit(query, ranked.subList(ready, ranked.size()), sink);
+        logger.info("Streaming compare scored {} of {} candidates, emitted {} results.",
+                scored, orderedIds.length, emitted);
+    }
+
+    /**
+     * Thông số chỉ mục và recall của LSH so với chấm điểm toàn bộ.
+     */
+    public Map<String, Object> getIndexStats() {
+        long relevant = recallRelevant.get();
+        Map<String, Object> lsh = new LinkedHashMap<>();
+        lsh.put("enabled", lshEnabled);
+        lsh.put("bands", lshIndex.getBands());
+        lsh.put("rows", lshIndex.getRows());
+        lsh.put("documents", lshIndex.size());
+        lsh.put("recallSampleRate", recallSampleRate);
+        lsh.put("recallThreshold", recallThreshold);
+        lsh.put("recallQueries", recallQueries.get());
+        lsh.put("recallRelevant", relevant);
+        lsh.put("recallFound", recallFound.get());
+        lsh.put("recall", relevant > 0 ? (double) recallFound.get() / relevant : null);
+
+        Map<String, Object> inverted = new LinkedHashMap<>();
+        inverted.put("documents", invertedIndex.documentCount());
+        inverted.put("distinctWords", invertedIndex.tokenCount());
+        inverted.put("postings", invertedIndex.postingCount());
+        inverted.put("estimatedBytes", invertedIndex.estimatedBytes());
+
+        Map<String, Object> dictionary = new LinkedHashMap<>();
+        dictionary.put("tokens", tokenDictionary.size());
+        dictionary.put("estimatedBytes", tokenDictionary.estimatedBytes());
+        dictionary.put("normalizerSignature", normalizer.signature());
+
+        Map<String, Object> cache = new LinkedHashMap<>();
+        cache.put("corpusVersion", corpusVersion.get());
+        cache.put("entries", compareCache.size());
+        cache.put("hits", compareCache.hits());
+        cache.put("misses", compareCache.misses());
+        cache.put("sizeEvictions", compareCache.sizeEvictions());
+        cache.put("expirations", compareCache.expirations());
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("lsh", lsh);
+        stats.put("invertedIndex", inverted);
+        stats.put("tokenDictionary", dictionary);
+        stats.put("compareCache", cache);
+        return stats;
+    }
+
+    private void addToIndex(Integer documentId, Integer rawWordCount, byte[] tokenSetBytes) {
+        if (rawWordCount <= MIN_OCR_WORDS) {
+            lshIndex.remove(documentId);
+            invertedIndex.remove(documentId);
+            return;
+        }
+        int[] tokenSet = Fingerprints.unpackInts(tokenSetBytes);
+        lshIndex.add(documentId, Fingerprints.tokenKeys(tokenSet));
+        invertedIndex.add(documentId, tokenSet);
+    }
+
+    // Chạy sau khi transaction hiện tại commit, bỏ qua khi rollback; không có transaction thì chạy ngay
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Gửi các kết quả theo thứ tự; tài liệu đã bị xóa từ lúc chấm điểm được bỏ qua.
+     * Fingerprint được đọc trên luồng của scoringPool: luồng ghi response giữ EntityManager của open-in-view,
+     * kết nối lấy qua đó chỉ được trả về pool khi đã ghi xong response.
+     * @return Số kết quả đã gửi.
+     */
+    private int emit(OcrQuery query, List<Hit> hits, Consumer<SimilarityResultDTO> sink) {
+        if (hits.isEmpty()) {
+            return 0;
+        }
+        Map<Integer, FingerprintView> fingerprints = scoringPool.submit(() -> loadFingerprints(hits)).join();
+        int emitted = 0;
+        for (Hit hit : hits) {
+            FingerprintView fingerprint = fingerprints.get(hit.documentId);
+            if (fingerprint != null) {
+                sink.accept(toResult(query, hit, fingerprint));
+                emitted++;
+            }
+        }
+        return emitted;
+    }
+
+    // Fingerprint đầy đủ (kèm tên file) của các kết quả cuối cùng, theo id tài liệu
+    private Map<Integer, FingerprintView> loadFingerprints(List<Hit> hits) {
+        if (hits.isEmpty()) {
+            return Map.of();
+        }
+        List<Integer> ids = new ArrayList<>(hits.size());
+        for (Hit hit : hits) {
+            ids.add(hit.documentId);
+        }
+        Map<Integer, FingerprintView> fingerprints = new HashMap<>();
+        for (FingerprintView fingerprint : fingerprintRepository.findViewsByDocumentIdIn(ids)) {
+            fingerprints.put(fingerprint.getDocumentId(), fingerprint);
+        }
+        return fingerprints;
+    }
+
+    private OcrQuery prepareQuery(String ocrText) {
+        if (TextSimilarity.countWords(ocrText) < MIN_OCR_WORDS) {
+            throw new IllegalArgumentException("OCR text is too short for reliable comparison.");
+        }
+        OcrQuery query = new OcrQuery(normalizer.words(ocrText), tokenDictionary);
+        if (query.words.isEmpty()) {
+            throw new IllegalArgumentException("Processed OCR text is empty after preprocessing.");
+        }
+        if (invertedIndex.documentCount() == 0) {
+            throw new IllegalArgumentException("No valid database texts available for comparison.");
+        }
+        return query;
+    }
+
+    // SHA-256 của các từ đã chuẩn hóa: hai ảnh OCR khác nhau về dấu câu/khoảng trắng cho cùng khóa
+    private static String digest(List<String> words) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            for (String word : words) {
+                sha256.update(word.getBytes(StandardCharsets.UTF_8));
+                sha256.update((byte) ' ');
+            }
+            return HexFormat.of().formatHex(sha256.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private int[] candidates(OcrQuery query) {
+        int[] candidateIds = lshEnabled ? lshIndex.candidates(query.lshKeys()) : invertedIndex.candidates(query.tokenSet);
+        logger.info("{} shortlisted {} of {} documents.", lshEnabled ? "LSH" : "Inverted index",
+                candidateIds.length, invertedIndex.documentCount());
+        return candidateIds;
+    }
+
+    // Chỉ tính Jaccard trên tập từ của chỉ mục đảo, giữ top-K; common_texts được tính sau cho kết quả cuối cùng
+    private List<Hit> score(OcrQuery query, int[] documentIds, int limit, double minScore) {
+        ScoringTask task = new ScoringTask(query, documentIds, 0, documentIds.length, limit, minScore);
+        TopK<Hit> top = documentIds.length <= SCORING_SPLIT_SIZE
+                ? task.compute()
+                : scoringPool.invoke(task);
+        return top.toSortedList();
+    }
+
+    // Tài liệu bị xóa sau khi được chấm điểm không có fingerprint và bị bỏ khỏi kết quả
+    private List<SimilarityResultDTO> toResults(OcrQuery query, List<Hit> hits) {
+        Map<Integer, FingerprintView> fingerprints = loadFingerprints(hits);
+        List<Hit> found = hits.stream().filter(hit -> fingerprints.containsKey(hit.documentId)).toList();
+        if (found.size() <= SCORING_SPLIT_SIZE) {
+            List<SimilarityResultDTO> results = new ArrayList<>(found.size());
+            for (Hit hit : found) {
+                results.add(toResult(query, hit, fingerprints.get(hit.documentId)));
+            }
+            return results;
+        }
+        // Stream song song chạy trong scoringPool khi được gọi từ một task của pool đó
+        return scoringPool.submit(() -> found.parallelStream()
+                .map(hit -> toResult(query, hit, fingerprints.get(hit.documentId)))
+                .collect(Collectors.toList())).join();
+    }
+
+    private SimilarityResultDTO toResult(OcrQuery query, Hit hit, FingerprintView fingerprint) {
+        List<String> commonTexts = List.of();
+        // Không có shingle 3 từ chung thì chắc chắn không có đoạn trùng lặp
+        if (Fingerprints.intersectionSize(query.shingles, Fingerprints.unpack(fingerprint.getShingleHashes())) > 0) {
+            int[] documentTokens = Fingerprints.unpackInts(fingerprint.getTokenIds());
+            commonTexts = TextSimilarity.findCommonText(query.words, query.tokenIds, documentTokens,
+                    "difflib".equalsIgnoreCase(commonTextMatcher));
+        }
+        return new SimilarityResultDTO(
+                fingerprint.getDocumentId(),
+                fingerprint.getFileName() != null ? fingerprint.getFileName() : "Unknown",
+                hit.score,
+                commonTexts
+        );
+    }
+
+    // Chạy trên recallExecutor sau khi kết quả đã được trả về
+    private void measureRecall(OcrQuery query, int[] lshCandidateIds) {
+        Set<Integer> shortlisted = new HashSet<>();
+        for (int id : lshCandidateIds) {
+            shortlisted.add(id);
+        }
+        long relevant = 0;
+        long found = 0;
+        for (Hit hit : score(query, invertedIndex.candidates(query.tokenSet), Integer.MAX_VALUE, recallThreshold)) {
+            relevant++;
+            if (shortlisted.contains(hit.documentId)) {
+                found++;
+            }
+        }
+        recallQueries.incrementAndGet();
+        recallRelevant.addAndGet(relevant);
+        recallFound.addAndGet(found);
+        logger.info("LSH recall sample: found {} of {} documents with similarity >= {}.", found, relevant, recallThreshold);
+    }
+
+    // Chia danh sách ứng viên đôi một cho ForkJoinPool, mỗi nhánh giữ top-K riêng rồi gộp lại
+    private final class ScoringTask extends RecursiveTask<TopK<Hit>> {
+        private final OcrQuery query;
+        private final int[] documentIds;
+        private final int from;
+        private final int to;
+        private final int limit;
+        private final double minScore;
+
+        private ScoringTask(OcrQuery query, int[] documentIds, int from, int to,
+                            int limit, double minScore) {
+            this.query = query;
+            this.documentIds = documentIds;
+            this.from = from;
+            this.to = to;
+            this.limit = limit;
+            this.minScore = minScore;
+        }
+
+        @Override
+        protected TopK<Hit> compute() {
+            if (to - from <= SCORING_SPLIT_SIZE) {
+                TopK<Hit> top = new TopK<>(limit, HIT_RANKING);
+                for (int i = from; i < to; i++) {
+                    // Chỉ mục chỉ chứa tài liệu đủ MIN_OCR_WORDS từ; null khi tài liệu vừa bị xóa
+                    int[] documentSet = invertedIndex.tokenSet(documentIds[i]);
+                    if (documentSet == null) {
+                        continue;
+                    }
+                    double score = Fingerprints.jaccard(query.tokenSet, query.unknownWords, documentSet);
+                    if (score >= minScore) {
+                        top.add(new Hit(documentIds[i], score));
+                    }
+                }
+                return top;
+            }
+            int middle = (from + to) >>> 1;
+            ScoringTask left = new ScoringTask(query, documentIds, from, middle, limit, minScore);
+            ScoringTask right = new ScoringTask(query, documentIds, middle, to, limit, minScore);
+            left.fork();
+            TopK<Hit> top = right.compute();
+            return top.merge(left.join());
+        }
+    }
+
+    // Tài liệu đã chấm Jaccard, chưa tính common_texts
+    private static final class Hit {
+        private final int documentId;
+        private final double score;
+
+        private Hit(int documentId, double score) {
+            this.documentId = documentId;
+            this.score = score;
+        }
+    }
+
+    // Văn bản OCR đã chuẩn hóa cùng id token và hash tính một lần cho mỗi truy vấn.
+    // Từ chưa có trong từ điển có id -1: không trùng tài liệu nào nhưng vẫn được tính vào hợp của Jaccard.
+    private static final class OcrQuery {
+        private final List<String> words;
+        private final long[] wordHashes;
+        private final int[] tokenIds;
+        private final int[] tokenSet;
+        private final long[] unknownHashes;
+        private final int unknownWords;
+        private final long[] shingles;
+
+        private OcrQuery(List<String> words, TokenDictionary dictionary) {
+            this.words = words;
+            this.wordHashes = Fingerprints.wordHashes(words);
+            this.tokenIds = dictionary.lookup(wordHashes);
+            int[] distinctIds = Fingerprints.distinct(tokenIds);
+            // Sau khi sắp xếp, id -1 (nếu có) đứng đầu
+            int skip = distinctIds.length > 0 && distinctIds[0] < 0 ? 1 : 0;
+            this.tokenSet = Arrays.copyOfRange(distinctIds, skip, distinctIds.length);
+            long[] unknown = new long[wordHashes.length];
+            int count = 0;
+            for (int i = 0; i < tokenIds.length; i++) {
+                if (tokenIds[i] < 0) {
+                    unknown[count++] = wordHashes[i];
+                }
+            }
+            this.unknownHashes = Fingerprints.distinct(Arrays.copyOf(unknown, count));
+            this.unknownWords = unknownHashes.length;
+            this.shingles = Fingerprints.shingleHashes(wordHashes);
+        }
+
+        private int setSize() {
+            return tokenSet.length + unknownWords;
+        }
+
+        // Khóa MinHash: id token như tài liệu, từ chưa biết dùng hash từ (không trùng khóa của tài liệu nào)
+        private long[] lshKeys() {
+            long[] keys = Arrays.copyOf(Fingerprints.tokenKeys(tokenSet), setSize());
+            System.arraycopy(unknownHashes, 0, keys, tokenSet.length, unknownWords);
+            return keys;
+        }
+    }
+}
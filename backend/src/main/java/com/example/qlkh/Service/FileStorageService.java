@@ -0,0 +1,159 @@
+package com.example.qlkh.Service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+import static com.example.qlkh.Controller.OCRController.logger;
+
+/**
+ * Lưu file gốc của tài liệu trong ${file.upload.dir}/documents theo SHA-256 của nội dung
+ * (documents/ab/cd/abcd...), nên cùng một nội dung chỉ được lưu một lần.
+ * Document.filePath lưu đường dẫn tương đối so với thư mục này; đường dẫn tuyệt đối của tài liệu cũ vẫn đọc được.
+ * Lưu và xóa cùng một file loại trừ nhau (khóa theo đường dẫn) để không xóa file mà tài liệu đang được lưu dùng lại.
+ */
+@Service
+public class FileStorageService {
+
+    private static final long TRANSFER_CHUNK = 1024 * 1024;
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final Path root;
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    public FileStorageService(@Value("${file.upload.dir}") String uploadDir) {
+        this.root = Path.of(uploadDir).toAbsolutePath().resolve("documents");
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Đưa file đã ghi xong (ví dụ file tạm của công việc nhập tài liệu) vào kho; file nguồn được giữ nguyên
+     * để người gọi tự xóa khi đã lưu tài liệu xong. Nếu kho đã có nội dung này thì dùng bản đã có.
+     * Gọi trong transaction lưu tài liệu: khóa của file được giữ tới khi transaction kết thúc,
+     * nên {@link #deleteUnlessUsed} của file này chờ tới khi tài liệu mới đã commit (hoặc rollback).
+     * @return Đường dẫn lưu trong Document.filePath.
+     */
+    public String store(Path source, String contentHash) throws IOException {
+        String key = keyOf(contentHash);
+        ReentrantLock lock = lockOf(key);
+        lock.lock();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            try {
+                return storeLocked(source, key);
+            } finally {
+                lock.unlock();
+            }
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                lock.unlock();
+            }
+        });
+        return storeLocked(source, key);
+    }
+
+    private String storeLocked(Path source, String key) throws IOException {
+        Path target = root.resolve(key);
+        if (Files.exists(target)) {
+            return key;
+        }
+        Files.createDirectories(target.getParent());
+        try {
+            // Thư mục tạm nằm cùng ổ đĩa với kho: chỉ tạo hard link, không chép dữ liệu
+            Files.createLink(target, source);
+        } catch (FileAlreadyExistsException e) {
+            return key;
+        } catch (IOException | UnsupportedOperationException e) {
+            try (InputStream in = Files.newInputStream(source)) {
+                write(in, target);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Ghi dữ liệu từ stream vào path qua FileChannel, từng đoạn một, không giữ cả file trong heap.
+     * Dữ liệu được ghi vào file tạm cạnh path rồi đổi tên, nên path không bao giờ chứa file ghi dở.
+     */
+    public static long write(InputStream in, Path path) throws IOException {
+        Path partial = path.resolveSibling(path.getFileName() + ".part");
+        long written = 0;
+        try (ReadableByteChannel source = Channels.newChannel(in);
+             FileChannel target = FileChannel.open(partial, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long count;
+            while ((count = target.transferFrom(source, written, TRANSFER_CHUNK)) > 0) {
+                written += count;
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        }
+        Files.move(partial, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return written;
+    }
+
+    /**
+     * @param filePath Giá trị Document.filePath.
+     * @return File trên đĩa, hoặc null nếu không còn.
+     */
+    public Path resolve(String filePath) {
+        if (filePath == null) {
+            return null;
+        }
+        Path path = root.resolve(filePath).normalize();
+        return Files.isRegularFile(path) ? path : null;
+    }
+
+    /**
+     * Xóa file khi không còn tài liệu nào dùng; chạy khi giữ khóa của file nên không xen với {@link #store}.
+     * @param inUse Kiểm tra (bằng một lần đọc mới) còn tài liệu đã commit nào trỏ tới filePath không.
+     */
+    public void deleteUnlessUsed(String filePath, BooleanSupplier inUse) {
+        if (filePath == null) {
+            return;
+        }
+        ReentrantLock lock = lockOf(filePath);
+        lock.lock();
+        try {
+            Path path = resolve(filePath);
+            if (path == null || !path.startsWith(root) || inUse.getAsBoolean()) {
+                return;
+            }
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Could not delete stored file {}: {}", filePath, e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock lockOf(String key) {
+        return locks[Math.floorMod(key.hashCode(), LOCK_STRIPES)];
+    }
+
+    private static String keyOf(String contentHash) {
+        if (contentHash == null || contentHash.length() < 4) {
+            throw new IllegalArgumentException("Invalid content hash: " + contentHash);
+        }
+        return contentHash.substring(0, 2) + "/" + contentHash.substring(2, 4) + "/" + contentHash;
+    }
+}
@@ -2,19 +2,34 @@ package com.example.qlkh.Service.Impl;
 
 import com.example.qlkh.Entity.Customer;
 import com.example.qlkh.Entity.Document;
+import com.example.qlkh.Entity.DocumentPage;
 import com.example.qlkh.Repository.CustomerRepository;
+import com.example.qlkh.Repository.DocumentPageRepository;
 import com.example.qlkh.Repository.DocumentRepository;
 import com.example.qlkh.Service.DocumentService;
+import com.example.qlkh.Service.DocumentSimilarityService;
+import com.example.qlkh.Service.FileStorageService;
 import com.example.qlkh.dto.DocumentDTO;
+import com.example.qlkh.dto.DocumentFileView;
+import com.example.qlkh.dto.DocumentPageDTO;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 import static com.example.qlkh.Controller.OCRController.logger;
@@ -29,9 +44,28 @@ public class DocumentServiceImpl implements DocumentService {
     @Autowired
     private CustomerRepository customerRepository;
 
+    @Autowired
+    private DocumentPageRepository documentPageRepository;
+
+    @Autowired
+    private DocumentSimilarityService documentSimilarityService;
+
+    @Autowired
+    private FileStorageService fileStorageService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     @Value("${ocr.service.url}")
     private String ocrServiceUrl;
 
+    // Xóa file trong kho của tài liệu đã xóa, sau khi transaction xóa tài liệu đã commit
+    private final ExecutorService fileCleanup = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "file-cleanup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     @Override
     public List<DocumentDTO> getAllDocuments() {
         return documentRepository.findAll()
@@ -46,6 +80,7 @@ public class DocumentServiceImpl implements DocumentService {
         document.setFileName(documentDTO.getFileName());
         document.setFilePath(documentDTO.getFilePath());
         document.setExtractedText(documentDTO.getExtractedText());
+        document.setContentHash(documentDTO.getContentHash());
         document.setCreatedAt(LocalDateTime.now());
 
         List<Integer> authorIds = documentDTO.getAuthorIds();
@@ -58,7 +93,7 @@ public class DocumentServiceImpl implements DocumentService {
         logger.info("Attempting to save document: {}", document);
         Document savedDocument = documentRepository.save(document);
         logger.info("Document saved successfully with ID: {}", savedDocument.getId());
-
+        documentSimilarityService.indexDocument(savedDocument.getId(), savedDocument.getExtractedText());
 
         return new DocumentDTO(
                 savedDocument.getId(),
@@ -66,19 +101,64 @@ public class DocumentServiceImpl implements DocumentService {
                 savedDocument.getFileName(),
                 savedDocument.getFilePath(),
                 savedDocument.getExtractedText(),
-                savedDocument.getCreatedAt().toString()
+                savedDocument.getCreatedAt().toString(),
+                savedDocument.getContentHash()
         );
     }
 
+    @Override
+    public DocumentDTO addAuthors(Integer documentId, List<Integer> authorIds) {
+        Document document = documentRepository.findById(documentId)
+                .orElseThrow(() -> new RuntimeException("Document not found with id: " + documentId));
+        if (authorIds != null && !authorIds.isEmpty()) {
+            Set<Integer> existing = document.getAuthors().stream().map(Customer::getId).collect(Collectors.toSet());
+            for (Customer author : customerRepository.findAllById(authorIds)) {
+                if (existing.add(author.getId())) {
+                    document.getAuthors().add(author);
+                }
+            }
+        }
+        return convertToDTO(document);
+    }
+
     @Override
     public boolean deleteDocument(Integer documentId) {
-        if (!documentRepository.existsById(documentId)) {
+        Optional<Document> document = documentRepository.findById(documentId);
+        if (document.isEmpty()) {
             return false;
         }
-        documentRepository.deleteById(documentId);
+        documentRepository.delete(document.get());
+        documentPageRepository.deleteByDocumentId(documentId);
+        documentSimilarityService.removeDocument(documentId);
+        // Xóa file trong kho sau khi commit (rollback thì tài liệu vẫn còn file). File có thể dùng chung với
+        // tài liệu khác trùng nội dung, kể cả tài liệu công việc nhập khác vừa lưu, nên kiểm tra lại bằng một lần đọc mới
+        String filePath = document.get().getFilePath();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                fileCleanup.execute(() -> deleteFileUnlessUsed(filePath));
+            }
+        });
         return true;
     }
 
+    // Chạy trên luồng file-cleanup, không giữ kết nối của transaction xóa tài liệu trong lúc đọc lại
+    private void deleteFileUnlessUsed(String filePath) {
+        try {
+            TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+            readOnly.executeWithoutResult(status -> fileStorageService.deleteUnlessUsed(
+                    filePath, () -> documentRepository.existsByFilePath(filePath)));
+        } catch (RuntimeException e) {
+            logger.warn("Could not clean up stored file {}: {}", filePath, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fileCleanup.shutdown();
+    }
+
     @Override
     public DocumentDTO getDocumentById(Integer id) {
         Document document = documentRepository.findById(id)
@@ -87,12 +167,28 @@ public class DocumentServiceImpl implements DocumentService {
     }
 
     @Override
-    public String getDocumentFilePathById(Integer documentId) {
-        Document document = documentRepository.findById(documentId)
+    public DocumentFileView getDocumentFileById(Integer documentId) {
+        return documentRepository.findFileById(documentId)
                 .orElseThrow(() -> new RuntimeException("Document not found: " + documentId));
-        return document.getFilePath();
     }
 
+    @Override
+    public List<DocumentPageDTO> getDocumentPages(Integer documentId) {
+        return documentPageRepository.findByDocumentIdOrderByPageNumberAsc(documentId).stream()
+                .map(this::convertToDTO)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<DocumentPageDTO> searchPages(String query, int limit) {
+        return documentPageRepository.search(query, DocumentPage.Status.DONE, PageRequest.of(0, limit)).stream()
+                .map(this::convertToDTO)
+                .collect(Collectors.toList());
+    }
+
+    private DocumentPageDTO convertToDTO(DocumentPage page) {
+        return new DocumentPageDTO(page.getJobFileId(), page.getDocumentId(), page.getPageNumber(), page.getText());
+    }
 
     private DocumentDTO convertToDTO(Document document) {
         return new DocumentDTO(
@@ -103,7 +199,8 @@ public class DocumentServiceImpl implements DocumentService {
                 document.getFileName(),
                 document.getFilePath(),
                 document.getExtractedText(),
-                document.getCreatedAt().toString()
+                document.getCreatedAt().toString(),
+                document.getContentHash()
         );
     }
 }
@@ -1,55 +1,87 @@
 package com.example.qlkh.Service;
 
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.http.*;
+import com.example.qlkh.Exception.OcrOverloadedException;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
-import org.springframework.web.client.HttpClientErrorException;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static com.example.qlkh.Controller.OCRController.logger;
 
 @Service
 public class OCRService {
 
-    private final RestTemplate restTemplate;
+    private final OcrClient ocrClient;
+    private final OcrResultCache ocrResultCache;
+    private final CircuitBreaker ocrCircuitBreaker;
 
-    @Value("${ocr.service.url}")
-    private String ocrServiceUrl; // URL của Flask OCR Service
-
-    public OCRService(RestTemplate restTemplate) {
-        this.restTemplate = restTemplate;
+    public OCRService(OcrClient ocrClient, OcrResultCache ocrResultCache,
+                      @Qualifier("ocrCircuitBreaker") CircuitBreaker ocrCircuitBreaker) {
+        this.ocrClient = ocrClient;
+        this.ocrResultCache = ocrResultCache;
+        this.ocrCircuitBreaker = ocrCircuitBreaker;
     }
 
     /**
-     * Xử lý OCR cho nhiều file tải lên.
+     * Xử lý OCR cho nhiều file tải lên. File đã có trong cache OCR được trả về ngay, không gọi OCR service;
+     * các file còn lại được gom thành lô, mỗi lô một request tới OCR service, các lô được gửi đồng thời.
+     * Không chặn luồng gọi trong lúc chờ OCR service.
      * @param files Danh sách file cần nhận diện.
-     * @return Kết quả OCR cho từng file.
+     * @return Kết quả OCR cho từng file, theo thứ tự của files; lỗi của từng file nằm trong kết quả của file đó.
+     * @throws OcrOverloadedException Khi có file không nằm trong cache mà mạch OCR đang mở.
      */
-    public List<Map<String, Object>> processMultipleFiles(List<MultipartFile> files) {
-        List<Map<String, Object>> results = new ArrayList<>();
-
-        for (MultipartFile file : files) {
-            try {
-                // Xử lý OCR từng file
-                results.add(processOCR(file));
-            } catch (Exception e) {
-                logger.error("Error processing file {}: {}", file.getOriginalFilename(), e.getMessage());
-                results.add(Map.of(
-                        "fileName", file.getOriginalFilename(),
-                        "error", e.getMessage()
-                ));
+    public CompletableFuture<List<Map<String, Object>>> processMultipleFiles(List<MultipartFile> files) {
+        List<Map<String, Object>> results = new ArrayList<>(Collections.nCopies(files.size(), null));
+        List<String> hashes = new ArrayList<>();
+        List<Integer> misses = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            String hash = hash(files.get(i));
+            hashes.add(hash);
+            Optional<OcrClient.OcrResult> cached = ocrResultCache.get(hash);
+            if (cached.isPresent()) {
+                results.set(i, Map.of("results", cached.get().getEntries(), "cached", true));
+            } else {
+                misses.add(i);
             }
         }
 
-        return results;
+        if (!misses.isEmpty() && ocrCircuitBreaker.isOpen()) {
+            throw new OcrOverloadedException(HttpStatus.SERVICE_UNAVAILABLE, ocrCircuitBreaker.retryAfterSeconds(),
+                    "OCR service is unavailable, please retry later");
+        }
+
+        long[] sizes = misses.stream().mapToLong(i -> files.get(i).getSize()).toArray();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (List<Integer> planned : ocrClient.planBatches(sizes)) {
+            List<Integer> batch = planned.stream().map(misses::get).toList();
+            List<MultipartFile> batchFiles = batch.stream().map(files::get).toList();
+            List<String> batchHashes = batch.stream().map(hashes::get).toList();
+            futures.add(processBatch(batchFiles, batchHashes).thenAccept(batchResults -> {
+                // Mỗi lô ghi vào các vị trí riêng của nó
+                synchronized (results) {
+                    for (int k = 0; k < batch.size(); k++) {
+                        results.set(batch.get(k), batchResults.get(k));
+                    }
+                }
+            }));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                .thenApply(done -> {
+                    synchronized (results) {
+                        return List.copyOf(results);
+                    }
+                });
     }
 
     /**
@@ -58,66 +90,68 @@ public class OCRService {
      * @return Kết quả OCR.
      */
     public Map<String, Object> processOCR(MultipartFile file) {
+        return processMultipleFiles(List.of(file)).join().get(0);
+    }
+
+    // Gửi các file trong một request và lưu kết quả thành công vào cache; lỗi được trả về trong kết quả của từng file
+    private CompletableFuture<List<Map<String, Object>>> processBatch(List<MultipartFile> files, List<String> hashes) {
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.MULTIPART_FORM_DATA);
-
-            MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
-            body.add("file", new ByteArrayResource(file.getBytes()) {
-                @Override
-                public String getFilename() {
-                    return file.getOriginalFilename();
-                }
-            });
-
-            HttpEntity<MultiValueMap<String, Object>> requestEntity = new HttpEntity<>(body, headers);
-
-            ResponseEntity<Map> response = restTemplate.postForEntity(
-                    ocrServiceUrl + "/upload",
-                    requestEntity,
-                    Map.class
-            );
-
-            return response.getBody();
-        } catch (HttpClientErrorException e) {
-            logger.error("Error from OCR service: {} - {}", e.getStatusCode(), e.getResponseBodyAsString());
-            return Map.of(
-                    "fileName", file.getOriginalFilename(),
-                    "error", "OCR service error: " + e.getStatusCode()
-            );
-        } catch (Exception e) {
-            logger.error("Failed to process file {}: {}", file.getOriginalFilename(), e.getMessage());
-            return Map.of(
-                    "fileName", file.getOriginalFilename(),
-                    "error", "Failed to process file: " + e.getMessage()
-            );
+            // Đọc file qua input stream của multipart (đã nằm trên đĩa), không chép toàn bộ vào heap
+            List<Resource> resources = files.stream().map(MultipartFile::getResource).toList();
+
+            return ocrClient.recognizeAsync(resources)
+                    .thenApply(ocrResults -> {
+                        List<Map<String, Object>> results = new ArrayList<>();
+                        for (int i = 0; i < ocrResults.size(); i++) {
+                            ocrResultCache.put(hashes.get(i), ocrResults.get(i));
+                            results.add(Map.of("results", ocrResults.get(i).getEntries()));
+                        }
+                        return results;
+                    })
+                    .exceptionally(e -> batchError(files, e));
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(batchError(files, e));
         }
     }
+
+    private static List<Map<String, Object>> batchError(List<MultipartFile> files, Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        logger.error("Failed to process files {}: {}",
+                files.stream().map(MultipartFile::getOriginalFilename).toList(), cause.getMessage());
+        return files.stream().map(file -> errorResult(file, "Failed to process file: " + cause.getMessage())).toList();
+    }
+
+    // Không đọc được file thì bỏ qua cache cho file đó
+    private static String hash(MultipartFile file) {
+        try {
+            return ContentHash.of(file.getInputStream());
+        } catch (IOException e) {
+            logger.warn("Could not hash file {}: {}", file.getOriginalFilename(), e.getMessage());
+            return null;
+        }
+    }
+
+    private static Map<String, Object> errorResult(MultipartFile file, String error) {
+        return Map.of(
+                "fileName", String.valueOf(file.getOriginalFilename()),
+                "error", String.valueOf(error)
+        );
+    }
+
     /**
      * Gửi yêu cầu so sánh văn bản tới Python OCR service.
      * @param payload Payload bao gồm text và danh sách tài liệu.
      * @return Kết quả so sánh từ Python OCR service.
+     * @throws OcrOverloadedException Khi mạch của /compare đang mở.
      */
     public Map<String, Object> compareWithPython(Map<String, Object> payload) {
         try {
-            // Cấu hình header cho request
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-
-            // Tạo request entity
-            HttpEntity<Map<String, Object>> requestEntity = new HttpEntity<>(payload, headers);
-
-            // Gửi request tới Flask
-            ResponseEntity<Map> response = restTemplate.postForEntity(
-                    ocrServiceUrl + "/compare",
-                    requestEntity,
-                    Map.class
-            );
-
-            // Trả kết quả từ Flask
-            return response.getBody();
-        } catch (Exception e) {
-            throw new RuntimeException("Error calling Python OCR service: " + e.getMessage());
+            return ocrClient.compareAsync(payload).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof OcrOverloadedException overloaded) {
+                throw overloaded;
+            }
+            throw new RuntimeException("Error calling Python OCR service: " + e.getCause().getMessage());
         }
     }
 }
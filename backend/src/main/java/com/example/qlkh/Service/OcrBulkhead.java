@@ -0,0 +1,103 @@
+package com.example.qlkh.Service;
+
+import com.example.qlkh.Exception.OcrOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Giới hạn số request đồng bộ đang chờ OCR service (/api/ocr/upload, /api/ocr/compare), để khi OCR quá tải
+ * các request này không chiếm hết luồng Tomcat của các API khách hàng, hợp đồng.
+ * Tối đa ocr.bulkhead.max-concurrent request chạy cùng lúc, tối đa ocr.bulkhead.max-queue request chờ;
+ * hàng đợi đầy thì trả 429, chờ quá ocr.bulkhead.max-wait-ms thì trả 503, cả hai kèm Retry-After.
+ */
+@Service
+public class OcrBulkhead {
+
+    private final Semaphore permits;
+    private final int maxQueue;
+    private final long maxWaitMs;
+    private final long retryAfterSeconds;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Timer waitTimer;
+    private final Counter rejectedQueueFull;
+    private final Counter rejectedTimeout;
+
+    public OcrBulkhead(@Value("${ocr.bulkhead.max-concurrent:4}") int maxConcurrent,
+                       @Value("${ocr.bulkhead.max-queue:8}") int maxQueue,
+                       @Value("${ocr.bulkhead.max-wait-ms:2000}") long maxWaitMs,
+                       @Value("${ocr.bulkhead.retry-after-seconds:5}") long retryAfterSeconds,
+                       MeterRegistry meterRegistry) {
+        this.permits = new Semaphore(Math.max(1, maxConcurrent), true);
+        this.maxQueue = Math.max(0, maxQueue);
+        this.maxWaitMs = maxWaitMs;
+        this.retryAfterSeconds = retryAfterSeconds;
+        Gauge.builder("ocr.bulkhead.queue.depth", waiting, AtomicInteger::get)
+                .description("Requests waiting for an OCR slot")
+                .register(meterRegistry);
+        Gauge.builder("ocr.bulkhead.active", permits, p -> Math.max(1, maxConcurrent) - p.availablePermits())
+                .description("Requests currently holding an OCR slot")
+                .register(meterRegistry);
+        this.waitTimer = Timer.builder("ocr.bulkhead.wait")
+                .description("Time spent waiting for an OCR slot")
+                .register(meterRegistry);
+        this.rejectedQueueFull = Counter.builder("ocr.bulkhead.rejected").tag("reason", "queue_full").register(meterRegistry);
+        this.rejectedTimeout = Counter.builder("ocr.bulkhead.rejected").tag("reason", "timeout").register(meterRegistry);
+    }
+
+    /**
+     * Chờ một chỗ trống để gọi OCR service; dùng trong try-with-resources để trả chỗ khi xong.
+     * @throws OcrOverloadedException 429 khi hàng đợi đầy, 503 khi chờ quá lâu.
+     */
+    public Permit acquire() {
+        if (permits.tryAcquire()) {
+            waitTimer.record(0, TimeUnit.NANOSECONDS);
+            return new Permit();
+        }
+        if (waiting.incrementAndGet() > maxQueue) {
+            waiting.decrementAndGet();
+            rejectedQueueFull.increment();
+            throw new OcrOverloadedException(HttpStatus.TOO_MANY_REQUESTS, retryAfterSeconds,
+                    "Too many OCR requests, please retry later");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS)) {
+                rejectedTimeout.increment();
+                throw new OcrOverloadedException(HttpStatus.SERVICE_UNAVAILABLE, retryAfterSeconds,
+                        "OCR service is busy, please retry later");
+            }
+            return new Permit();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OcrOverloadedException(HttpStatus.SERVICE_UNAVAILABLE, retryAfterSeconds,
+                    "Interrupted while waiting for OCR service");
+        } finally {
+            waiting.decrementAndGet();
+            waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public final class Permit implements AutoCloseable {
+        private boolean released;
+
+        private Permit() {
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                permits.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,863 @@
+package com.example.qlkh.Service;
+
+import com.example.qlkh.Exception.OcrOverloadedException;
+import com.example.qlkh.Exception.OcrServiceException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.async.methods.AbstractCharResponseConsumer;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleResponseConsumer;
+import org.apache.hc.client5.http.entity.mime.AbstractContentBody;
+import org.apache.hc.client5.http.entity.mime.HttpMultipartMode;
+import org.apache.hc.client5.http.entity.mime.MultipartEntityBuilder;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.nio.AsyncRequestProducer;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.entity.AsyncEntityProducers;
+import org.apache.hc.core5.http.nio.support.AsyncRequestBuilder;
+import org.apache.hc.core5.http.nio.support.classic.AbstractClassicEntityProducer;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.example.qlkh.Controller.OCRController.logger;
+
+/**
+ * Client dùng chung gọi Flask OCR service qua HTTP client không chặn: trong lúc OCR service xử lý,
+ * request đang chờ không giữ luồng nào, các phương thức *Async trả về CompletableFuture.
+ * Future luôn hoàn thành trên luồng ocrIoExecutor, không phải luồng I/O của client, nên có thể nối thêm việc chặn.
+ * Nhiều file nhỏ được gửi chung một request multipart "files" (giới hạn theo số file và tổng dung lượng),
+ * kết quả được chia lại cho từng file theo trường source_index do OCR service gắn vào.
+ * File PDF có thể được OCR theo từng trang qua /upload/pages để nhận kết quả dần dần.
+ * Mọi lời gọi đi qua circuit breaker (ocrCircuitBreaker cho OCR, compareCircuitBreaker cho /compare):
+ * khi OCR service khởi động lại, lời gọi bị từ chối ngay với OcrOverloadedException (503) thay vì chờ hết timeout.
+ * Khi chạy nhiều OCR service, mỗi lần gửi chọn một endpoint qua {@link OcrEndpointPool}.
+ * Hủy future trả về (hoặc future nối từ nó bằng thenApply, thenCompose...) thì hủy luôn request đang chạy.
+ */
+@Service
+public class OcrClient {
+
+    private static final int HEDGE_MIN_SAMPLES = 20;
+    private static final ContentType CBOR = ContentType.create("application/cbor");
+
+    private final CloseableHttpAsyncClient httpClient;
+    private final ExecutorService ioExecutor;
+    private final CircuitBreaker ocrCircuitBreaker;
+    private final CircuitBreaker compareCircuitBreaker;
+    private final OcrEndpointPool endpointPool;
+    // Hạn chót của các request; hạn chót bị hủy ngay khi request xong để không giữ request trong heap
+    private final ScheduledThreadPoolExecutor deadlines;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final ObjectMapper cborMapper = new ObjectMapper(new CBORFactory());
+    private final MeterRegistry meterRegistry;
+    private final Timer uploadTimer;
+    private final Timer pagesTimer;
+    private final Timer compareTimer;
+    private final Counter retries;
+    private final Counter hedgesSent;
+    private final Counter hedgesWon;
+
+    // 1 = mỗi file một request
+    @Value("${ocr.client.batch.max-files:8}")
+    private int batchMaxFiles;
+
+    // File lớn hơn giới hạn này luôn được gửi riêng
+    @Value("${ocr.client.batch.max-bytes:4194304}")
+    private long batchMaxBytes;
+
+    // Tổng thời gian tối đa của một request, kể cả thời gian chờ kết nối trong pool
+    @Value("${ocr.http.deadline-ms:600000}")
+    private long deadlineMs;
+
+    // Tính cả lần gửi đầu tiên; 1 = không gọi lại
+    @Value("${ocr.retry.max-attempts:3}")
+    private int retryMaxAttempts;
+
+    @Value("${ocr.retry.base-delay-ms:200}")
+    private long retryBaseDelayMs;
+
+    @Value("${ocr.retry.max-delay-ms:2000}")
+    private long retryMaxDelayMs;
+
+    // Gửi Accept-Encoding: gzip và nén request /compare từ ocr.compression.min-bytes byte trở lên
+    @Value("${ocr.compression.enabled:true}")
+    private boolean compressionEnabled;
+
+    @Value("${ocr.compression.min-bytes:8192}")
+    private int compressionMinBytes;
+
+    // json hoặc cbor
+    @Value("${ocr.compare.format:json}")
+    private String compareFormat;
+
+    @Value("${ocr.compare.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    @Value("${ocr.compare.hedge.default-delay-ms:1000}")
+    private long hedgeDefaultDelayMs;
+
+    @Value("${ocr.compare.hedge.min-delay-ms:50}")
+    private long hedgeMinDelayMs;
+
+    public OcrClient(@Qualifier("ocrAsyncHttpClient") CloseableHttpAsyncClient httpClient,
+                     @Qualifier("ocrIoExecutor") ExecutorService ioExecutor,
+                     @Qualifier("ocrCircuitBreaker") CircuitBreaker ocrCircuitBreaker,
+                     @Qualifier("compareCircuitBreaker") CircuitBreaker compareCircuitBreaker,
+                     OcrEndpointPool endpointPool,
+                     MeterRegistry meterRegistry) {
+        this.httpClient = httpClient;
+        this.ioExecutor = ioExecutor;
+        this.ocrCircuitBreaker = ocrCircuitBreaker;
+        this.compareCircuitBreaker = compareCircuitBreaker;
+        this.endpointPool = endpointPool;
+        this.meterRegistry = meterRegistry;
+        this.deadlines = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "ocr-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.deadlines.setRemoveOnCancelPolicy(true);
+        this.uploadTimer = Timer.builder("ocr.client.requests").tag("call", "upload").register(meterRegistry);
+        this.pagesTimer = Timer.builder("ocr.client.requests").tag("call", "pages").register(meterRegistry);
+        this.compareTimer = Timer.builder("ocr.client.requests").tag("call", "compare")
+                .publishPercentiles(0.95)
+                .register(meterRegistry);
+        this.retries = Counter.builder("ocr.client.retries").register(meterRegistry);
+        this.hedgesSent = Counter.builder("ocr.compare.hedges").tag("outcome", "sent").register(meterRegistry);
+        this.hedgesWon = Counter.builder("ocr.compare.hedges").tag("outcome", "won").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        deadlines.shutdownNow();
+    }
+
+    /**
+     * Gửi một file tới /upload và nối văn bản của các kết quả (mỗi trang PDF một kết quả).
+     * @throws RuntimeException Khi OCR service trả lỗi cho file hoặc cho một trang của file.
+     */
+    public String extractText(File file) {
+        return recognize(List.of(new FileSystemResource(file))).get(0).text();
+    }
+
+    /**
+     * Chia các file thành lô theo thứ tự ban đầu, mỗi lô không quá batch.max-files file và batch.max-bytes byte.
+     * @param sizes Dung lượng từng file.
+     * @return Chỉ số các file của từng lô.
+     */
+    public List<List<Integer>> planBatches(long[] sizes) {
+        List<List<Integer>> batches = new ArrayList<>();
+        List<Integer> batch = new ArrayList<>();
+        long batchBytes = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            if (!batch.isEmpty() && (batch.size() >= batchMaxFiles || batchBytes + sizes[i] > batchMaxBytes)) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchBytes = 0;
+            }
+            batch.add(i);
+            batchBytes += sizes[i];
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    /**
+     * Như {@link #recognizeAsync} nhưng chờ kết quả.
+     */
+    public List<OcrResult> recognize(List<? extends Resource> files) {
+        try {
+            return recognizeAsync(files).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    /**
+     * Gửi các file trong một request tới /upload.
+     * @return Kết quả của từng file theo thứ tự của files; future lỗi khi không gọi được OCR service,
+     * lỗi của riêng một file nằm trong kết quả của file đó.
+     */
+    public CompletableFuture<List<OcrResult>> recognizeAsync(List<? extends Resource> files) {
+        MultipartEntityBuilder multipart = multipart();
+        for (Resource file : files) {
+            multipart.addPart("files", new ResourceBody(file));
+        }
+        HttpEntity entity = multipart.build();
+        if (entity.getContentLength() >= 0) {
+            recordPayload("upload", "request", entity.getContentLength(), entity.getContentLength());
+        }
+        // File ảnh, PDF đã được nén sẵn nên request không nén lại, chỉ response JSON được nén
+        return execute("/upload", ocrCircuitBreaker, uploadTimer, true, url -> multipartProducer(url + "/upload", entity, true),
+                SimpleResponseConsumer::create)
+                .thenApply(response -> {
+                    try {
+                        JsonNode results = readTree("upload", response).get("results");
+                        if (results == null) {
+                            throw new RuntimeException("OCR Service returned no results");
+                        }
+                        return splitBySource(mapper.convertValue(results, new TypeReference<List<Map<String, Object>>>() {}),
+                                files.size());
+                    } catch (IOException e) {
+                        throw new RuntimeException("Error reading OCR Service response", e);
+                    }
+                });
+    }
+
+    /**
+     * Gửi một file tới /upload/pages; kết quả từng trang được chuyển cho listener (lần lượt, trên luồng ocrIoExecutor)
+     * ngay khi OCR service trả về, không chờ cả file xong.
+     * @param pages Các trang cần OCR (bắt đầu từ 1), rỗng thì OCR mọi trang.
+     * @return Future xong khi mọi trang đã được chuyển cho listener; lỗi khi không gọi được OCR service
+     * hoặc OCR service báo lỗi cho cả file.
+     */
+    public CompletableFuture<Void> recognizePagesAsync(Resource file, Collection<Integer> pages, PageListener listener) {
+        MultipartEntityBuilder multipart = multipart().addPart("file", new ResourceBody(file));
+        if (!pages.isEmpty()) {
+            multipart.addTextBody("pages", pages.stream().map(String::valueOf).collect(Collectors.joining(",")));
+        }
+        HttpEntity entity = multipart.build();
+        // Không gọi lại: listener có thể đã nhận một phần các trang; lần chạy lại của công việc chỉ OCR các trang còn thiếu
+        return execute("/upload/pages", ocrCircuitBreaker, pagesTimer, false, url -> multipartProducer(url + "/upload/pages", entity, false),
+                () -> new PageConsumer(listener))
+                .thenCompose(listenerDone -> listenerDone);
+    }
+
+    /**
+     * Gửi yêu cầu so sánh văn bản tới /compare. Khi ocr.compare.hedge.enabled, nếu chưa có kết quả sau
+     * khoảng p95 thời gian của các lần so sánh gần đây thì gửi thêm một request; dùng kết quả về trước và hủy request kia.
+     * @return Kết quả so sánh; future lỗi với OcrOverloadedException khi mạch của /compare đang mở.
+     */
+    public CompletableFuture<Map<String, Object>> compareAsync(Map<String, Object> payload) {
+        // Mã hóa một lần, dùng chung cho các lần gọi lại và request gửi thêm
+        CompareBody body;
+        try {
+            body = encodeCompare(payload);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Invalid comparison payload", e));
+        }
+        if (!hedgeEnabled) {
+            return compareOnce(body);
+        }
+
+        CompletableFuture<Map<String, Object>> result = new CompletableFuture<>();
+        List<CompletableFuture<Map<String, Object>>> attempts = new ArrayList<>();
+        hedgeAttempt(result, attempts, body, false);
+        long delayMs = hedgeDelayMs();
+        CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS, ioExecutor).execute(() -> {
+            if (!result.isDone() && !compareCircuitBreaker.isOpen()) {
+                hedgeAttempt(result, attempts, body, true);
+            }
+        });
+        // Có kết quả (hoặc người gọi hủy) thì hủy các request còn chạy, kể cả request thua; kết nối của chúng bị đóng
+        result.whenComplete((value, error) -> {
+            synchronized (attempts) {
+                attempts.forEach(attempt -> attempt.cancel(true));
+            }
+        });
+        return result;
+    }
+
+    private void hedgeAttempt(CompletableFuture<Map<String, Object>> result,
+                              List<CompletableFuture<Map<String, Object>>> attempts, CompareBody body, boolean hedge) {
+        CompletableFuture<Map<String, Object>> attempt;
+        synchronized (attempts) {
+            if (result.isDone()) {
+                return;
+            }
+            attempt = compareOnce(body);
+            attempts.add(attempt);
+            if (hedge) {
+                hedgesSent.increment();
+            }
+        }
+        attempt.whenComplete((value, error) -> {
+            synchronized (attempts) {
+                if (error == null) {
+                    if (result.complete(value) && hedge) {
+                        hedgesWon.increment();
+                    }
+                } else if (attempts.stream().allMatch(CompletableFuture::isDone)) {
+                    result.completeExceptionally(error);
+                }
+            }
+        });
+    }
+
+    private CompletableFuture<Map<String, Object>> compareOnce(CompareBody body) {
+        return execute("/compare", compareCircuitBreaker, compareTimer, true,
+                url -> {
+                    AsyncRequestBuilder builder = AsyncRequestBuilder.post(url + "/compare")
+                            .addHeader(HttpHeaders.ACCEPT, body.contentType.getMimeType())
+                            .addHeader(HttpHeaders.ACCEPT_ENCODING, compressionEnabled ? "gzip" : "identity")
+                            .setEntity(AsyncEntityProducers.create(body.bytes, body.contentType));
+                    if (body.gzipped) {
+                        builder.addHeader(HttpHeaders.CONTENT_ENCODING, "gzip");
+                    }
+                    return builder.build();
+                },
+                SimpleResponseConsumer::create)
+                .thenApply(response -> {
+                    try {
+                        return mapper.convertValue(readTree("compare", response), new TypeReference<Map<String, Object>>() {});
+                    } catch (IOException e) {
+                        throw new RuntimeException("Error reading OCR Service response", e);
+                    }
+                });
+    }
+
+    /**
+     * Mã hóa payload so sánh theo ocr.compare.format (json hoặc cbor, cbor cần thư viện cbor2 ở OCR service)
+     * rồi nén gzip khi lớn hơn ocr.compression.min-bytes: văn bản tài liệu lặp từ nhiều nên thường nhỏ đi vài lần.
+     */
+    private CompareBody encodeCompare(Map<String, Object> payload) throws IOException {
+        boolean cbor = "cbor".equalsIgnoreCase(compareFormat);
+        long start = System.nanoTime();
+        byte[] raw = (cbor ? cborMapper : mapper).writeValueAsBytes(payload);
+        boolean gzipped = compressionEnabled && raw.length >= compressionMinBytes;
+        byte[] bytes = gzipped ? gzip(raw) : raw;
+        serializationTimer("compare", "encode", cbor ? "cbor" : "json").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        recordPayload("compare", "request", raw.length, bytes.length);
+        return new CompareBody(bytes, cbor ? CBOR : ContentType.APPLICATION_JSON, gzipped);
+    }
+
+    // Giải nén (nếu OCR service nén) và đọc response JSON hoặc CBOR, ghi lại kích thước và thời gian
+    private JsonNode readTree(String call, SimpleHttpResponse response) throws IOException {
+        long start = System.nanoTime();
+        byte[] bytes = response.getBodyBytes() == null ? new byte[0] : response.getBodyBytes();
+        Header encoding = response.getFirstHeader(HttpHeaders.CONTENT_ENCODING);
+        byte[] raw = encoding != null && "gzip".equalsIgnoreCase(encoding.getValue().strip()) ? gunzip(bytes) : bytes;
+        boolean cbor = response.getContentType() != null
+                && CBOR.getMimeType().equalsIgnoreCase(response.getContentType().getMimeType());
+        JsonNode tree = (cbor ? cborMapper : mapper).readTree(raw);
+        serializationTimer(call, "decode", cbor ? "cbor" : "json").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        recordPayload(call, "response", raw.length, bytes.length);
+        return tree;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(512, data.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 64 * 1024)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] data) throws IOException {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(data), 64 * 1024)) {
+            return gzip.readAllBytes();
+        }
+    }
+
+    // Kích thước payload trước khi nén (uncompressed) và khi truyền đi (wire)
+    private void recordPayload(String call, String direction, long uncompressedBytes, long wireBytes) {
+        DistributionSummary.builder("ocr.client.payload.bytes")
+                .baseUnit("bytes")
+                .tag("call", call)
+                .tag("direction", direction)
+                .tag("stage", "uncompressed")
+                .register(meterRegistry)
+                .record(uncompressedBytes);
+        DistributionSummary.builder("ocr.client.payload.bytes")
+                .baseUnit("bytes")
+                .tag("call", call)
+                .tag("direction", direction)
+                .tag("stage", "wire")
+                .register(meterRegistry)
+                .record(wireBytes);
+    }
+
+    private Timer serializationTimer(String call, String operation, String format) {
+        return Timer.builder("ocr.client.serialization")
+                .description("Time spent encoding or decoding OCR service payloads, including compression")
+                .tag("call", call)
+                .tag("operation", operation)
+                .tag("format", format)
+                .register(meterRegistry);
+    }
+
+    // p95 của các lần so sánh thành công gần đây; chưa đủ mẫu thì dùng ocr.compare.hedge.default-delay-ms
+    private long hedgeDelayMs() {
+        if (compareTimer.count() < HEDGE_MIN_SAMPLES) {
+            return hedgeDefaultDelayMs;
+        }
+        for (ValueAtPercentile percentile : compareTimer.takeSnapshot().percentileValues()) {
+            if (percentile.percentile() == 0.95) {
+                return Math.max(hedgeMinDelayMs, (long) percentile.value(TimeUnit.MILLISECONDS));
+            }
+        }
+        return hedgeDefaultDelayMs;
+    }
+
+    private static MultipartEntityBuilder multipart() {
+        return MultipartEntityBuilder.create()
+                .setMode(HttpMultipartMode.EXTENDED)
+                .setCharset(StandardCharsets.UTF_8);
+    }
+
+    // Ghi body multipart trên luồng ocrIoExecutor, đọc file theo từng đoạn, không giữ cả file trong heap
+    // Response dạng stream (/upload/pages) không được nén nên không gửi Accept-Encoding
+    private AsyncRequestProducer multipartProducer(String uri, HttpEntity entity, boolean acceptGzip) {
+        return AsyncRequestBuilder.post(uri)
+                .addHeader(HttpHeaders.ACCEPT_ENCODING, acceptGzip && compressionEnabled ? "gzip" : "identity")
+                .setEntity(new AbstractClassicEntityProducer(64 * 1024, ContentType.parse(entity.getContentType()), ioExecutor) {
+                    @Override
+                    protected void produceData(ContentType contentType, OutputStream outputStream) throws IOException {
+                        entity.writeTo(outputStream);
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Gửi request qua circuit breaker; response không phải 2xx được trả về dưới dạng OcrServiceException.
+     * Circuit breaker xét kết quả cuối cùng của lời gọi (sau khi đã gọi lại, có thể ở endpoint khác),
+     * lỗi của riêng một endpoint do {@link OcrEndpointPool} xử lý bằng cách loại endpoint đó.
+     * @param retryable Gọi lại khi lỗi tạm thời (không có response, 429, 502-504), tối đa ocr.retry.max-attempts lần,
+     * chờ ngẫu nhiên giữa 0 và base-delay * 2^(lần-1) (full jitter) để các request không gọi lại cùng lúc.
+     * Producer và consumer được tạo mới cho mỗi lần gửi.
+     */
+    private <T> CompletableFuture<T> execute(String path, CircuitBreaker breaker, Timer timer, boolean retryable,
+                                             Function<String, AsyncRequestProducer> request,
+                                             Supplier<AsyncResponseConsumer<T>> consumer) {
+        CircuitBreaker.Call call = breaker.tryAcquire();
+        if (call == null) {
+            return CompletableFuture.failedFuture(new OcrOverloadedException(HttpStatus.SERVICE_UNAVAILABLE,
+                    breaker.retryAfterSeconds(), "OCR service is unavailable, please retry later"));
+        }
+        Exchange<T> exchange = new Exchange<>(path, timer, retryable ? retryMaxAttempts : 1, request, consumer);
+        ScheduledFuture<?> deadline = deadlineMs <= 0 ? null : deadlines.schedule(() -> {
+            if (exchange.result.completeExceptionally(new TimeoutException(
+                    "OCR request " + path + " did not finish within " + deadlineMs + " ms"))) {
+                logger.warn("OCR request {} cancelled after {} ms", path, deadlineMs);
+                exchange.cancel(true);
+            }
+        }, deadlineMs, TimeUnit.MILLISECONDS);
+        exchange.result.whenComplete((response, error) -> {
+            if (deadline != null) {
+                deadline.cancel(false);
+            }
+            if (error == null) {
+                call.success();
+            } else if (error instanceof TimeoutException
+                    || (error instanceof OcrServiceException serviceError && serviceError.isServiceFailure())) {
+                call.failure();
+            } else {
+                call.ignore();
+            }
+            // Người gọi hủy future (ví dụ ứng dụng đang dừng) thì hủy luôn request
+            if (exchange.result.isCancelled()) {
+                exchange.cancel(false);
+            }
+        });
+        exchange.attempt(1, null);
+        return exchange.result;
+    }
+
+    // Một lời gọi tới OCR service, gồm các lần gọi lại; lần gọi lại được gửi tới endpoint khác nếu có
+    private final class Exchange<T> {
+        private final String path;
+        private final Timer timer;
+        private final int maxAttempts;
+        private final Function<String, AsyncRequestProducer> request;
+        private final Supplier<AsyncResponseConsumer<T>> consumer;
+        private final CompletableFuture<T> result = new ExchangeFuture<>(this::cancelResult);
+        private Future<T> current;
+        private Attempt currentAttempt;
+
+        Exchange(String path, Timer timer, int maxAttempts,
+                 Function<String, AsyncRequestProducer> request, Supplier<AsyncResponseConsumer<T>> consumer) {
+            this.path = path;
+            this.timer = timer;
+            this.maxAttempts = Math.max(1, maxAttempts);
+            this.request = request;
+            this.consumer = consumer;
+        }
+
+        void attempt(int number, OcrEndpointPool.Endpoint failedEndpoint) {
+            Attempt attempt = new Attempt(endpointPool.choose(failedEndpoint));
+            long start = System.nanoTime();
+            Future<T> future = httpClient.execute(request.apply(attempt.endpoint.getUrl()), consumer.get(), new FutureCallback<>() {
+                @Override
+                public void completed(T response) {
+                    ioExecutor.execute(() -> {
+                        int code = response instanceof HttpResponse httpResponse ? httpResponse.getCode() : 200;
+                        if (code >= 200 && code < 300) {
+                            attempt.success();
+                            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                            result.complete(response);
+                        } else {
+                            onError(number, attempt, new OcrServiceException(code, "OCR Service error: " + code));
+                        }
+                    });
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    OcrServiceException error = e instanceof StatusException status
+                            ? new OcrServiceException(status.code, "OCR Service error: " + status.code)
+                            : new OcrServiceException(0, "Error calling OCR Service: " + e.getMessage(), e);
+                    ioExecutor.execute(() -> onError(number, attempt, error));
+                }
+
+                @Override
+                public void cancelled() {
+                    attempt.ignore();
+                    ioExecutor.execute(() -> result.completeExceptionally(
+                            new CancellationException("OCR request was cancelled")));
+                }
+            });
+            synchronized (this) {
+                current = future;
+                currentAttempt = attempt;
+            }
+            if (result.isDone()) {
+                future.cancel(true);
+            }
+        }
+
+        private void onError(int number, Attempt attempt, OcrServiceException error) {
+            if (error.isServiceFailure()) {
+                attempt.failure();
+            } else {
+                attempt.ignore();
+            }
+            if (number >= maxAttempts || !error.isTransient() || result.isDone()) {
+                result.completeExceptionally(error);
+                return;
+            }
+            long delayMs = ThreadLocalRandom.current().nextLong(
+                    Math.min(retryMaxDelayMs, retryBaseDelayMs << Math.min(number - 1, 20)) + 1);
+            logger.info("OCR request {} to {} failed ({}), retrying in {} ms",
+                    path, attempt.endpoint.getUrl(), error.getMessage(), delayMs);
+            retries.increment();
+            CompletableFuture.delayedExecutor(delayMs, TimeUnit.MILLISECONDS, ioExecutor).execute(() -> {
+                if (!result.isDone()) {
+                    attempt(number + 1, attempt.endpoint);
+                }
+            });
+        }
+
+        // Một future nối từ result bị hủy: hủy result, request được hủy trong whenComplete của execute
+        private void cancelResult() {
+            result.cancel(false);
+        }
+
+        // Quá hạn được tính là lỗi của endpoint; người gọi hủy thì không
+        synchronized void cancel(boolean timedOut) {
+            if (currentAttempt != null && timedOut) {
+                currentAttempt.failure();
+            }
+            if (current != null) {
+                current.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * CompletableFuture không báo việc hủy ngược về future nguồn: hủy future tạo bởi thenApply chỉ hủy chính nó.
+     * Mọi future nối từ ExchangeFuture cũng là ExchangeFuture và gọi onCancel khi bị hủy.
+     */
+    private static final class ExchangeFuture<T> extends CompletableFuture<T> {
+        private final Runnable onCancel;
+
+        ExchangeFuture(Runnable onCancel) {
+            this.onCancel = onCancel;
+        }
+
+        @Override
+        public <U> CompletableFuture<U> newIncompleteFuture() {
+            return new ExchangeFuture<>(onCancel);
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled) {
+                onCancel.run();
+            }
+            return cancelled;
+        }
+    }
+
+    // Một lần gửi: báo kết quả đúng một lần cho endpoint đã chọn
+    private static final class Attempt {
+        private final OcrEndpointPool.Endpoint endpoint;
+        private boolean reported;
+
+        Attempt(OcrEndpointPool.Endpoint endpoint) {
+            this.endpoint = endpoint;
+            endpoint.start();
+        }
+
+        synchronized void success() {
+            if (!reported) {
+                reported = true;
+                endpoint.success();
+            }
+        }
+
+        synchronized void failure() {
+            if (!reported) {
+                reported = true;
+                endpoint.failure();
+            }
+        }
+
+        synchronized void ignore() {
+            if (!reported) {
+                reported = true;
+                endpoint.ignore();
+            }
+        }
+    }
+
+    private static List<OcrResult> splitBySource(List<Map<String, Object>> entries, int fileCount) {
+        List<List<Map<String, Object>>> perFile = new ArrayList<>();
+        for (int i = 0; i < fileCount; i++) {
+            perFile.add(new ArrayList<>());
+        }
+        for (Map<String, Object> entry : entries) {
+            Object sourceIndex = entry.get("source_index");
+            if (sourceIndex == null && fileCount == 1) {
+                // OCR service cũ không gắn source_index
+                perFile.get(0).add(entry);
+            } else if (sourceIndex instanceof Number index && index.intValue() >= 0 && index.intValue() < fileCount) {
+                perFile.get(index.intValue()).add(entry);
+            } else {
+                throw new RuntimeException("OCR Service result cannot be matched to an uploaded file: " + sourceIndex);
+            }
+        }
+        return perFile.stream().map(OcrResult::new).toList();
+    }
+
+    /**
+     * Nhận kết quả OCR theo trang của {@link #recognizePagesAsync}.
+     */
+    public interface PageListener {
+        // Tổng số trang của file, được gọi trước các trang
+        void onPageCount(int pages);
+
+        // text null khi trang bị lỗi
+        void onPage(int page, String text, String error);
+    }
+
+    /**
+     * Các kết quả OCR service trả về cho một file (mỗi trang PDF một kết quả).
+     */
+    public static final class OcrResult {
+        private final List<Map<String, Object>> entries;
+
+        public OcrResult(List<Map<String, Object>> entries) {
+            this.entries = entries;
+        }
+
+        public List<Map<String, Object>> getEntries() {
+            return entries;
+        }
+
+        /**
+         * @return Lỗi đầu tiên OCR service báo cho file, hoặc null.
+         */
+        public String getError() {
+            for (Map<String, Object> entry : entries) {
+                if (entry.get("text") == null) {
+                    return String.valueOf(entry.get("error"));
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Văn bản của file, các trang cách nhau bởi xuống dòng.
+         * @throws RuntimeException Khi OCR service báo lỗi cho file hoặc một trang của file.
+         */
+        public String text() {
+            String error = getError();
+            if (error != null) {
+                throw new RuntimeException("OCR Service error: " + error);
+            }
+            StringBuilder extractedText = new StringBuilder();
+            for (Map<String, Object> entry : entries) {
+                extractedText.append(entry.get("text").toString()).append("\n");
+            }
+            return extractedText.toString().trim();
+        }
+    }
+
+    // Đọc response NDJSON của /upload/pages theo từng dòng khi dữ liệu tới; listener chạy lần lượt trên ocrIoExecutor
+    private final class PageConsumer extends AbstractCharResponseConsumer<CompletableFuture<Void>> {
+        private final PageListener listener;
+        private final StringBuilder line = new StringBuilder();
+        private CompletableFuture<Void> listenerDone = CompletableFuture.completedFuture(null);
+
+        PageConsumer(PageListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        protected void start(HttpResponse response, ContentType contentType) throws HttpException {
+            if (response.getCode() < 200 || response.getCode() >= 300) {
+                throw new StatusException(response.getCode());
+            }
+            setCharset(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        protected int capacityIncrement() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        protected void data(CharBuffer data, boolean endOfStream) throws IOException {
+            while (data.hasRemaining()) {
+                char c = data.get();
+                if (c == '\n') {
+                    handleLine(line.toString());
+                    line.setLength(0);
+                } else {
+                    line.append(c);
+                }
+            }
+            if (endOfStream && !line.isEmpty()) {
+                handleLine(line.toString());
+                line.setLength(0);
+            }
+        }
+
+        private void handleLine(String text) throws IOException {
+            if (text.isBlank()) {
+                return;
+            }
+            JsonNode node = mapper.readTree(text);
+            if (node.hasNonNull("pages")) {
+                int count = node.get("pages").asInt();
+                dispatch(() -> listener.onPageCount(count));
+            } else if (node.hasNonNull("page")) {
+                int page = node.get("page").asInt();
+                String pageText = node.hasNonNull("text") ? node.get("text").asText() : null;
+                String error = node.hasNonNull("error") ? node.get("error").asText() : null;
+                dispatch(() -> listener.onPage(page, pageText, error));
+            } else if (node.hasNonNull("error")) {
+                throw new IOException("OCR Service error: " + node.get("error").asText());
+            }
+        }
+
+        private void dispatch(Runnable callback) {
+            listenerDone = listenerDone.thenRunAsync(callback, ioExecutor);
+        }
+
+        @Override
+        protected CompletableFuture<Void> buildResult() {
+            return listenerDone;
+        }
+
+        @Override
+        public void releaseResources() {
+        }
+    }
+
+    // Body đã mã hóa của request /compare
+    private static final class CompareBody {
+        private final byte[] bytes;
+        private final ContentType contentType;
+        private final boolean gzipped;
+
+        CompareBody(byte[] bytes, ContentType contentType, boolean gzipped) {
+            this.bytes = bytes;
+            this.contentType = contentType;
+            this.gzipped = gzipped;
+        }
+    }
+
+    // Response lỗi của request đọc theo dòng, được chuyển thành OcrServiceException
+    private static final class StatusException extends HttpException {
+        private final int code;
+
+        StatusException(int code) {
+            super("OCR Service error: " + code);
+            this.code = code;
+        }
+    }
+
+    // Phần file của request multipart, chỉ mở file khi ghi body
+    private static final class ResourceBody extends AbstractContentBody {
+        private final Resource resource;
+
+        ResourceBody(Resource resource) {
+            super(ContentType.parse(MediaTypeFactory.getMediaType(resource)
+                    .orElse(org.springframework.http.MediaType.APPLICATION_OCTET_STREAM).toString()));
+            this.resource = resource;
+        }
+
+        @Override
+        public String getFilename() {
+            return resource.getFilename();
+        }
+
+        @Override
+        public long getContentLength() {
+            try {
+                return resource.contentLength();
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            try (InputStream in = resource.getInputStream()) {
+                in.transferTo(out);
+            }
+        }
+    }
+}
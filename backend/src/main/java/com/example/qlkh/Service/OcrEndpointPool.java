@@ -0,0 +1,314 @@
+package com.example.qlkh.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.qlkh.Controller.OCRController.logger;
+
+/**
+ * Danh sách các OCR service chạy song song, chọn endpoint cho từng request.
+ * Endpoint lấy từ ocr.service.endpoints-file (nếu có, đọc lại khi file thay đổi), nếu không thì từ ocr.service.urls,
+ * nếu không nữa thì từ ocr.service.url. Mỗi dòng (hoặc mỗi phần tử cách nhau bởi dấu phẩy) có dạng
+ * "url" hoặc "url;weight=N", dòng trống và dòng bắt đầu bằng # bị bỏ qua.
+ * Chiến lược ocr.balancer.strategy: p2c (mặc định) chọn ngẫu nhiên hai endpoint theo trọng số rồi lấy endpoint
+ * có ít request đang chạy hơn so với trọng số; least-outstanding xét mọi endpoint.
+ * Endpoint lỗi liên tiếp ocr.balancer.eject-after-failures lần bị loại trong ocr.balancer.eject-ms
+ * (gấp đôi sau mỗi lần bị loại liên tiếp, tối đa 10 lần); khi mọi endpoint đều bị loại thì vẫn chọn trong tất cả.
+ */
+@Service
+public class OcrEndpointPool {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ocr.service.url}")
+    private String serviceUrl;
+
+    @Value("${ocr.service.urls:}")
+    private String serviceUrls;
+
+    @Value("${ocr.service.endpoints-file:}")
+    private String endpointsFile;
+
+    @Value("${ocr.balancer.strategy:p2c}")
+    private String strategy;
+
+    @Value("${ocr.balancer.eject-after-failures:3}")
+    private int ejectAfterFailures;
+
+    @Value("${ocr.balancer.eject-ms:30000}")
+    private long ejectMs;
+
+    private volatile List<Endpoint> endpoints = List.of();
+    private long endpointsFileModified = -1;
+
+    public OcrEndpointPool(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    void init() {
+        if (!endpointsFile.isBlank()) {
+            refresh();
+        }
+        if (endpoints.isEmpty()) {
+            String configured = serviceUrls.isBlank() ? serviceUrl : serviceUrls;
+            update(Arrays.asList(configured.split(",")));
+        }
+        if (endpoints.isEmpty()) {
+            throw new IllegalStateException("No OCR service endpoint is configured");
+        }
+    }
+
+    /**
+     * Đọc lại ocr.service.endpoints-file khi file thay đổi; file không đọc được hoặc rỗng thì giữ danh sách cũ.
+     */
+    @Scheduled(fixedDelayString = "${ocr.balancer.refresh-ms:10000}")
+    public synchronized void refresh() {
+        if (endpointsFile.isBlank()) {
+            return;
+        }
+        Path path = Path.of(endpointsFile);
+        try {
+            long modified = Files.getLastModifiedTime(path).toMillis();
+            if (modified == endpointsFileModified) {
+                return;
+            }
+            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            if (update(lines)) {
+                endpointsFileModified = modified;
+            } else {
+                logger.warn("OCR endpoints file {} lists no endpoint, keeping the current endpoints", path);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not read OCR endpoints file {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Chọn endpoint cho một request.
+     * @param exclude Endpoint vừa lỗi (khi gọi lại), tránh chọn lại nếu còn endpoint khác; có thể null.
+     */
+    public Endpoint choose(Endpoint exclude) {
+        List<Endpoint> all = endpoints;
+        long now = System.currentTimeMillis();
+        List<Endpoint> candidates = new ArrayList<>(all.size());
+        for (Endpoint endpoint : all) {
+            if (endpoint != exclude && !endpoint.isEjected(now)) {
+                candidates.add(endpoint);
+            }
+        }
+        if (candidates.isEmpty()) {
+            for (Endpoint endpoint : all) {
+                if (!endpoint.isEjected(now)) {
+                    candidates.add(endpoint);
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            candidates = all;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        if ("least-outstanding".equals(strategy)) {
+            Endpoint best = null;
+            for (Endpoint endpoint : candidates) {
+                if (best == null || endpoint.load() < best.load()
+                        || (endpoint.load() == best.load() && ThreadLocalRandom.current().nextBoolean())) {
+                    best = endpoint;
+                }
+            }
+            return best;
+        }
+        Endpoint first = pickWeighted(candidates, null);
+        Endpoint second = pickWeighted(candidates, first);
+        return second.load() < first.load() ? second : first;
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    private static Endpoint pickWeighted(List<Endpoint> candidates, Endpoint skip) {
+        int total = 0;
+        for (Endpoint endpoint : candidates) {
+            if (endpoint != skip) {
+                total += endpoint.weight;
+            }
+        }
+        int target = ThreadLocalRandom.current().nextInt(total);
+        for (Endpoint endpoint : candidates) {
+            if (endpoint != skip) {
+                target -= endpoint.weight;
+                if (target < 0) {
+                    return endpoint;
+                }
+            }
+        }
+        throw new IllegalStateException("No OCR endpoint to choose from");
+    }
+
+    // Giữ nguyên đối tượng (và số request đang chạy) của endpoint không đổi url
+    private synchronized boolean update(List<String> entries) {
+        Map<String, Integer> parsed = new LinkedHashMap<>();
+        for (String entry : entries) {
+            String line = entry.strip();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split(";");
+            int weight = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String option = parts[i].strip();
+                if (option.startsWith("weight=")) {
+                    try {
+                        weight = Math.max(1, Integer.parseInt(option.substring("weight=".length()).strip()));
+                    } catch (NumberFormatException e) {
+                        logger.warn("Invalid weight for OCR endpoint '{}', using 1", line);
+                    }
+                }
+            }
+            parsed.put(stripTrailingSlash(parts[0].strip()), weight);
+        }
+        if (parsed.isEmpty()) {
+            return false;
+        }
+
+        Map<String, Endpoint> current = new LinkedHashMap<>();
+        for (Endpoint endpoint : endpoints) {
+            current.put(endpoint.url, endpoint);
+        }
+        List<Endpoint> next = new ArrayList<>();
+        parsed.forEach((url, weight) -> {
+            Endpoint endpoint = current.remove(url);
+            if (endpoint == null) {
+                endpoint = new Endpoint(url, weight);
+            } else {
+                endpoint.weight = weight;
+            }
+            next.add(endpoint);
+        });
+        current.values().forEach(Endpoint::removeMeters);
+        endpoints = List.copyOf(next);
+        logger.info("OCR endpoints: {}", next.stream().map(endpoint -> endpoint.url + " (weight " + endpoint.weight + ")").toList());
+        return true;
+    }
+
+    private static String stripTrailingSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    /**
+     * Một OCR service. Request được tính là đang chạy từ {@link #start()} tới khi báo kết quả.
+     */
+    public final class Endpoint {
+        private final String url;
+        private volatile int weight;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final List<Meter> meters = new ArrayList<>();
+        private final Counter successes;
+        private final Counter failures;
+
+        // Được sửa khi giữ khóa của endpoint
+        private int consecutiveFailures;
+        private int ejections;
+        private volatile long ejectedUntil;
+
+        private Endpoint(String url, int weight) {
+            this.url = url;
+            this.weight = weight;
+            meters.add(Gauge.builder("ocr.endpoint.outstanding", outstanding, AtomicInteger::get)
+                    .description("Requests in flight to this OCR endpoint")
+                    .tag("endpoint", url)
+                    .register(meterRegistry));
+            meters.add(Gauge.builder("ocr.endpoint.ejected", this, endpoint -> endpoint.isEjected(System.currentTimeMillis()) ? 1 : 0)
+                    .description("1 while this OCR endpoint is ejected after consecutive failures")
+                    .tag("endpoint", url)
+                    .register(meterRegistry));
+            successes = Counter.builder("ocr.endpoint.requests").tag("endpoint", url).tag("outcome", "success").register(meterRegistry);
+            failures = Counter.builder("ocr.endpoint.requests").tag("endpoint", url).tag("outcome", "failure").register(meterRegistry);
+            meters.add(successes);
+            meters.add(failures);
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        public boolean isEjected() {
+            return isEjected(System.currentTimeMillis());
+        }
+
+        public void start() {
+            outstanding.incrementAndGet();
+        }
+
+        public synchronized void success() {
+            outstanding.decrementAndGet();
+            successes.increment();
+            consecutiveFailures = 0;
+            ejections = 0;
+        }
+
+        // Chỉ lỗi do OCR service (không có response, 429, 5xx) mới tính để loại endpoint
+        public synchronized void failure() {
+            outstanding.decrementAndGet();
+            failures.increment();
+            // Request gửi trước khi endpoint bị loại không làm tăng thời gian loại
+            if (isEjected(System.currentTimeMillis())) {
+                return;
+            }
+            if (++consecutiveFailures >= Math.max(1, ejectAfterFailures)) {
+                consecutiveFailures = 0;
+                long duration = ejectMs << Math.min(ejections, 10);
+                ejections++;
+                ejectedUntil = System.currentTimeMillis() + duration;
+                logger.warn("OCR endpoint {} ejected for {} ms after {} consecutive failures", url, duration, ejectAfterFailures);
+            }
+        }
+
+        // Request bị hủy hoặc lỗi do chính request (4xx)
+        public void ignore() {
+            outstanding.decrementAndGet();
+        }
+
+        private boolean isEjected(long now) {
+            return now < ejectedUntil;
+        }
+
+        // Số request đang chạy so với trọng số
+        private double load() {
+            return (outstanding.get() + 1.0) / weight;
+        }
+
+        private void removeMeters() {
+            meters.forEach(meterRegistry::remove);
+        }
+    }
+}
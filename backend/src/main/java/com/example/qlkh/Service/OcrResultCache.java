@@ -0,0 +1,151 @@
+package com.example.qlkh.Service;
+
+import com.example.qlkh.Entity.OcrCacheEntry;
+import com.example.qlkh.Repository.OcrCacheRepository;
+import com.example.qlkh.dto.OcrCacheKeyView;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static com.example.qlkh.Controller.OCRController.logger;
+
+/**
+ * Cache kết quả OCR lưu trong bảng ocr_result_cache, khóa theo SHA-256 của file và ocr.cache.engine-version
+ * (đổi giá trị này khi nâng cấp Tesseract hoặc đổi cấu hình OCR để bỏ các kết quả cũ).
+ * Khi tổng dung lượng vượt ocr.cache.max-bytes, các mục lâu không được dùng nhất bị xóa trước (LRU).
+ * Chỉ kết quả không có lỗi mới được lưu.
+ */
+@Service
+public class OcrResultCache {
+
+    private static final int EVICTION_BATCH_SIZE = 100;
+
+    private final OcrCacheRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    @Value("${ocr.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ocr.cache.engine-version:tesseract-5.5.0}")
+    private String engineVersion;
+
+    // 0 = không giới hạn
+    @Value("${ocr.cache.max-bytes:268435456}")
+    private long maxBytes;
+
+    public OcrResultCache(OcrCacheRepository repository,
+                          PlatformTransactionManager transactionManager,
+                          MeterRegistry meterRegistry) {
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.hits = Counter.builder("ocr.cache.gets").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("ocr.cache.gets").tag("result", "miss").register(meterRegistry);
+        this.evictions = Counter.builder("ocr.cache.evictions").register(meterRegistry);
+    }
+
+    /**
+     * @param contentHash SHA-256 (hex) của file, null thì luôn miss.
+     * @return Kết quả đã lưu cho file, nếu có.
+     */
+    public Optional<OcrClient.OcrResult> get(String contentHash) {
+        if (!enabled || contentHash == null) {
+            return Optional.empty();
+        }
+        try {
+            Optional<OcrCacheEntry> entry = repository.findById(key(contentHash));
+            if (entry.isEmpty()) {
+                misses.increment();
+                return Optional.empty();
+            }
+            transactionTemplate.executeWithoutResult(status -> repository.touch(key(contentHash), LocalDateTime.now()));
+            hits.increment();
+            return Optional.of(new OcrClient.OcrResult(
+                    mapper.readValue(entry.get().getResults(), new TypeReference<List<Map<String, Object>>>() {})));
+        } catch (Exception e) {
+            // Lỗi cache không được làm hỏng việc OCR: coi như miss
+            logger.warn("Could not read OCR cache entry {}: {}", contentHash, e.getMessage());
+            misses.increment();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Lưu kết quả OCR của file (bỏ qua nếu kết quả có lỗi) rồi dọn cache nếu vượt dung lượng.
+     */
+    public void put(String contentHash, OcrClient.OcrResult result) {
+        if (!enabled || contentHash == null || result.getError() != null) {
+            return;
+        }
+        try {
+            String json = mapper.writeValueAsString(result.getEntries().stream().map(OcrResultCache::withoutSource).toList());
+            LocalDateTime now = LocalDateTime.now();
+            OcrCacheEntry entry = new OcrCacheEntry();
+            entry.setCacheKey(key(contentHash));
+            entry.setContentHash(contentHash);
+            entry.setEngineVersion(engineVersion);
+            entry.setResults(json);
+            entry.setSizeBytes(json.getBytes(StandardCharsets.UTF_8).length);
+            entry.setCreatedAt(now);
+            entry.setLastAccessedAt(now);
+            transactionTemplate.executeWithoutResult(status -> repository.save(entry));
+            evictIfNeeded();
+        } catch (JsonProcessingException | RuntimeException e) {
+            logger.warn("Could not store OCR cache entry {}: {}", contentHash, e.getMessage());
+        }
+    }
+
+    private void evictIfNeeded() {
+        if (maxBytes <= 0) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            long excess = repository.totalSizeBytes() - maxBytes;
+            while (excess > 0) {
+                List<OcrCacheKeyView> oldest = repository.findByOrderByLastAccessedAtAsc(
+                        PageRequest.of(0, EVICTION_BATCH_SIZE));
+                if (oldest.isEmpty()) {
+                    return;
+                }
+                for (OcrCacheKeyView view : oldest) {
+                    if (excess <= 0) {
+                        break;
+                    }
+                    repository.deleteById(view.getCacheKey());
+                    excess -= view.getSizeBytes();
+                    evictions.increment();
+                }
+                repository.flush();
+            }
+        });
+    }
+
+    private String key(String contentHash) {
+        return contentHash + ":" + engineVersion;
+    }
+
+    // Vị trí file trong request gốc không còn đúng khi kết quả được dùng lại
+    private static Map<String, Object> withoutSource(Map<String, Object> entry) {
+        Map<String, Object> copy = new LinkedHashMap<>(entry);
+        copy.remove("source_index");
+        copy.remove("source");
+        return copy;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.qlkh.Service;
+
+import com.example.qlkh.Entity.TokenDictionaryEntry;
+import com.example.qlkh.Repository.TokenDictionaryRepository;
+import com.example.qlkh.Similarity.LongIntHashMap;
+import com.example.qlkh.Similarity.TokenDictionary;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static com.example.qlkh.Controller.OCRController.logger;
+
+@Service
+public class TokenDictionaryService {
+
+    private static final int LOAD_BATCH_SIZE = 5000;
+
+    private final TokenDictionary dictionary;
+    private final TokenDictionaryRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    // Cấp id mới tuần tự, một luồng mỗi lần
+    private final Object internLock = new Object();
+    private int nextId;
+    // Từ mới đã được cấp id nhưng chưa lưu xong, theo hash
+    private final Map<Long, PendingToken> pending = new HashMap<>();
+
+    private record PendingToken(int id, CompletableFuture<Void> saved) {
+    }
+
+    public TokenDictionaryService(TokenDictionary dictionary,
+                                  TokenDictionaryRepository repository,
+                                  PlatformTransactionManager transactionManager) {
+        this.dictionary = dictionary;
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Nạp toàn bộ từ điển từ DB vào bộ nhớ (gọi khi khởi động, trước khi tính fingerprint).
+     * @return Số từ đã nạp.
+     */
+    public int load() {
+        synchronized (internLock) {
+            dictionary.clear();
+            int lastId = -1;
+            List<TokenDictionaryEntry> batch;
+            do {
+                batch = repository.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, LOAD_BATCH_SIZE));
+                for (TokenDictionaryEntry entry : batch) {
+                    dictionary.put(entry.getTokenHash(), entry.getId());
+                    lastId = entry.getId();
+                }
+            } while (batch.size() == LOAD_BATCH_SIZE);
+            nextId = lastId + 1;
+            logger.info("Token dictionary loaded with {} tokens.", dictionary.size());
+            return dictionary.size();
+        }
+    }
+
+    /**
+     * Id của từng từ, cấp id mới cho từ chưa có.
+     * Từ mới được lưu trong transaction riêng và chỉ được đưa vào từ điển trong bộ nhớ sau khi lưu xong,
+     * nên fingerprint đã lưu không bao giờ tham chiếu id chưa có trong DB. Từ mới phải được thêm trước khi
+     * transaction lưu tài liệu bắt đầu: trong transaction chỉ tra id của từ đã có.
+     * Khóa chỉ giữ trong lúc cấp id; việc ghi DB diễn ra ngoài khóa, luồng cần cùng từ mới thì chờ lần ghi đó.
+     * @param hashes Hash các từ đã chuẩn hóa theo thứ tự.
+     * @param words Các từ tương ứng với hashes, chỉ được gọi khi có từ mới.
+     */
+    public int[] intern(long[] hashes, Supplier<List<String>> words) {
+        int[] ids = dictionary.lookup(hashes);
+        if (!hasUnknown(ids)) {
+            return ids;
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("New tokens must be added to the dictionary before the transaction starts");
+        }
+        List<String> texts = words.get();
+        CompletableFuture<Void> saved = new CompletableFuture<>();
+        List<TokenDictionaryEntry> entries = new ArrayList<>();
+        Set<CompletableFuture<Void>> savedByOthers = new HashSet<>();
+        synchronized (internLock) {
+            ids = dictionary.lookup(hashes);
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] != LongIntHashMap.NO_VALUE) {
+                    continue;
+                }
+                PendingToken pending = this.pending.get(hashes[i]);
+                if (pending == null) {
+                    pending = new PendingToken(nextId++, saved);
+                    this.pending.put(hashes[i], pending);
+                    entries.add(new TokenDictionaryEntry(pending.id(), hashes[i], texts.get(i)));
+                } else if (pending.saved() != saved) {
+                    savedByOthers.add(pending.saved());
+                }
+                ids[i] = pending.id();
+            }
+        }
+
+        if (!entries.isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> repository.saveAll(entries));
+            } catch (RuntimeException e) {
+                // Id đã cấp bị bỏ trống; luồng đang chờ các từ này cũng thất bại
+                synchronized (internLock) {
+                    entries.forEach(entry -> pending.remove(entry.getTokenHash()));
+                }
+                saved.completeExceptionally(e);
+                throw e;
+            }
+            synchronized (internLock) {
+                for (TokenDictionaryEntry entry : entries) {
+                    dictionary.put(entry.getTokenHash(), entry.getId());
+                    pending.remove(entry.getTokenHash());
+                }
+            }
+            saved.complete(null);
+        }
+        savedByOthers.forEach(CompletableFuture::join);
+        return ids;
+    }
+
+    private static boolean hasUnknown(int[] ids) {
+        for (int id : ids) {
+            if (id == LongIntHashMap.NO_VALUE) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.qlkh.Similarity;
+
+import java.util.Arrays;
+
+/**
+ * Tìm các đoạn trùng lặp (ít nhất minLength token liên tiếp) giữa văn bản truy vấn a và tài liệu b
+ * bằng rolling hash: băm mọi cửa sổ minLength token của b làm hạt giống, quét a từ trái sang phải,
+ * với mỗi hạt giống khớp thì mở rộng về phía sau và lấy đoạn dài nhất.
+ * Thời gian gần tuyến tính theo |a| + |b|; các mảng tạm được dùng lại giữa các lần gọi nên
+ * một instance không an toàn luồng, mỗi luồng cần instance riêng.
+ * <p>
+ * Khác SequenceMatcher: các đoạn không bắt buộc theo cùng thứ tự trong b (đoạn bị đảo vị trí vẫn được
+ * tìm thấy) và không có heuristic "popular" của difflib.
+ */
+public class CommonPassageFinder {
+
+    // Giới hạn số vị trí kiểm tra cho mỗi hạt giống để tránh trường hợp xấu bậc hai với văn bản lặp
+    private static final int MAX_CHAIN = 256;
+    private static final long BASE = 0x100000001b3L;
+
+    private final int minLength;
+    private final long basePow;
+
+    private int[] head = new int[0];
+    private int[] next = new int[0];
+    private long[] windowHashes = new long[0];
+    private int[] blocks = new int[3 * 16];
+    private int blockCount;
+
+    public CommonPassageFinder(int minLength) {
+        if (minLength <= 0) {
+            throw new IllegalArgumentException("minLength must be positive");
+        }
+        this.minLength = minLength;
+        long pow = 1;
+        for (int i = 1; i < minLength; i++) {
+            pow *= BASE;
+        }
+        this.basePow = pow;
+    }
+
+    /**
+     * Tìm các đoạn trùng lặp, theo thứ tự xuất hiện trong a.
+     * Token âm được coi là không khớp với token nào.
+     * @return Số đoạn tìm thấy; đọc bằng {@link #queryStart}, {@link #docStart}, {@link #length}.
+     */
+    public int find(int[] a, int[] b) {
+        blockCount = 0;
+        if (a.length < minLength || b.length < minLength) {
+            return 0;
+        }
+        int mask = indexDocument(b);
+
+        int i = 0;
+        long hash = windowHash(a, 0);
+        while (i <= a.length - minLength) {
+            int bestJ = -1;
+            int bestLength = 0;
+            int checked = 0;
+            for (int j = head[bucket(hash, mask)]; j >= 0 && checked < MAX_CHAIN; j = next[j], checked++) {
+                int length = matchLength(a, i, b, j);
+                if (length > bestLength) {
+                    bestLength = length;
+                    bestJ = j;
+                }
+            }
+            if (bestLength >= minLength) {
+                addBlock(i, bestJ, bestLength);
+                i += bestLength;
+                if (i <= a.length - minLength) {
+                    hash = windowHash(a, i);
+                }
+            } else {
+                i++;
+                if (i <= a.length - minLength) {
+                    hash = (hash - a[i - 1] * basePow) * BASE + a[i + minLength - 1];
+                }
+            }
+        }
+        return blockCount;
+    }
+
+    public int queryStart(int block) {
+        return blocks[3 * block];
+    }
+
+    public int docStart(int block) {
+        return blocks[3 * block + 1];
+    }
+
+    public int length(int block) {
+        return blocks[3 * block + 2];
+    }
+
+    // Băm mọi cửa sổ của b vào bảng băm xâu chuỗi; chèn từ cuối lên để chuỗi bắt đầu ở vị trí nhỏ nhất
+    private int indexDocument(int[] b) {
+        int windows = b.length - minLength + 1;
+        int tableSize = Integer.highestOneBit(Math.max(windows, 2) * 2 - 1) * 2;
+        if (head.length < tableSize) {
+            head = new int[tableSize];
+        }
+        if (next.length < windows) {
+            next = new int[Math.max(windows, next.length * 2)];
+            windowHashes = new long[next.length];
+        }
+        int mask = tableSize - 1;
+        Arrays.fill(head, 0, tableSize, -1);
+
+        long hash = windowHash(b, 0);
+        windowHashes[0] = hash;
+        for (int j = 1; j < windows; j++) {
+            hash = (hash - b[j - 1] * basePow) * BASE + b[j + minLength - 1];
+            windowHashes[j] = hash;
+        }
+        for (int j = windows - 1; j >= 0; j--) {
+            int slot = bucket(windowHashes[j], mask);
+            next[j] = head[slot];
+            head[slot] = j;
+        }
+        return mask;
+    }
+
+    private long windowHash(int[] tokens, int start) {
+        long hash = 0;
+        for (int k = 0; k < minLength; k++) {
+            hash = hash * BASE + tokens[start + k];
+        }
+        return hash;
+    }
+
+    private int matchLength(int[] a, int i, int[] b, int j) {
+        int length = 0;
+        while (i + length < a.length && j + length < b.length
+                && a[i + length] == b[j + length] && a[i + length] >= 0) {
+            length++;
+        }
+        return length;
+    }
+
+    private void addBlock(int i, int j, int length) {
+        if (3 * (blockCount + 1) > blocks.length) {
+            blocks = Arrays.copyOf(blocks, blocks.length * 2);
+        }
+        blocks[3 * blockCount] = i;
+        blocks[3 * blockCount + 1] = j;
+        blocks[3 * blockCount + 2] = length;
+        blockCount++;
+    }
+
+    private static int bucket(long hash, int mask) {
+        return (int) TokenHash.mix64(hash) & mask;
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.qlkh.Similarity;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache LRU có giới hạn số phần tử và thời gian sống (TTL tính từ lúc ghi).
+ * Khi đầy, các phần tử hết hạn được dọn trước rồi mới bỏ phần tử ít dùng nhất.
+ * Các thao tác được đồng bộ hóa; đếm hit/miss/eviction để xuất metrics.
+ */
+public class ExpiringLruCache<K, V> {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong sizeEvictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    public ExpiringLruCache(int maxEntries, long ttlMillis) {
+        this(maxEntries, ttlMillis, System::nanoTime);
+    }
+
+    ExpiringLruCache(int maxEntries, long ttlMillis, LongSupplier clock) {
+        if (maxEntries < 0 || ttlMillis < 0) {
+            throw new IllegalArgumentException("maxEntries and ttlMillis must not be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @return Giá trị còn hạn, null nếu không có hoặc đã hết hạn.
+     */
+    public synchronized V get(K key) {
+        Entry<V> entry = entries.get(key);
+        if (entry != null && clock.getAsLong() - entry.writtenAt >= ttlNanos) {
+            entries.remove(key);
+            expirations.incrementAndGet();
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        if (maxEntries == 0 || ttlNanos == 0) {
+            return;
+        }
+        long now = clock.getAsLong();
+        if (entries.size() >= maxEntries && !entries.containsKey(key)) {
+            purgeExpired(now);
+            if (entries.size() >= maxEntries) {
+                Iterator<K> eldest = entries.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                sizeEvictions.incrementAndGet();
+            }
+        }
+        entries.put(key, new Entry<>(value, now));
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+
+    public long sizeEvictions() {
+        return sizeEvictions.get();
+    }
+
+    public long expirations() {
+        return expirations.get();
+    }
+
+    private void purgeExpired(long now) {
+        Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().getValue().writtenAt >= ttlNanos) {
+                it.remove();
+                expirations.incrementAndGet();
+            }
+        }
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long writtenAt;
+
+        private Entry(V value, long writtenAt) {
+            this.value = value;
+            this.writtenAt = writtenAt;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.qlkh.Similarity;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tính và đóng gói fingerprint của văn bản: dãy id token, tập id token và tập hash shingle 3 từ.
+ * Mảng int/long được lưu dạng BLOB big-endian, 4/8 byte mỗi phần tử.
+ */
+public final class Fingerprints {
+
+    /** Tăng khi thay đổi cách chuẩn hóa hoặc băm để job backfill tính lại. */
+    public static final int VERSION = 2;
+
+    /**
+     * Phiên bản fingerprint ứng với cấu hình chuẩn hóa: bằng VERSION với cấu hình giống Python,
+     * khác đi khi bật bỏ dấu/đổi ký tự nhầm/stop word để job backfill tính lại khi đổi cấu hình.
+     */
+    public static int version(TextNormalizer normalizer) {
+        return VERSION + (normalizer.signature() << 8);
+    }
+
+    /** Số từ mỗi shingle, bằng ngưỡng số từ của đoạn trùng lặp. */
+    public static final int SHINGLE_SIZE = TextSimilarity.COMMON_TEXT_THRESHOLD;
+
+    private Fingerprints() {
+    }
+
+    /**
+     * Hash từng từ theo đúng thứ tự trong văn bản.
+     */
+    public static long[] wordHashes(List<String> words) {
+        long[] hashes = new long[words.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = TokenHash.hash64(words.get(i));
+        }
+        return hashes;
+    }
+
+    /**
+     * Hash các shingle SHINGLE_SIZE từ liên tiếp, đã sắp xếp và bỏ trùng.
+     */
+    public static long[] shingleHashes(long[] wordHashes) {
+        int count = wordHashes.length - SHINGLE_SIZE + 1;
+        if (count <= 0) {
+            return new long[0];
+        }
+        long[] shingles = new long[count];
+        for (int i = 0; i < count; i++) {
+            long h = 0;
+            for (int k = 0; k < SHINGLE_SIZE; k++) {
+                h = TokenHash.mix64(h * 31 + wordHashes[i + k]);
+            }
+            shingles[i] = h;
+        }
+        return distinct(shingles);
+    }
+
+    /**
+     * Sắp xếp và bỏ phần tử trùng (trả về mảng mới).
+     */
+    public static long[] distinct(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int unique = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[unique++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, unique);
+    }
+
+    /**
+     * Số phần tử chung của hai mảng đã sắp xếp, không trùng.
+     */
+    public static int intersectionSize(long[] a, long[] b) {
+        int i = 0, j = 0, count = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Sắp xếp và bỏ phần tử trùng (trả về mảng mới).
+     */
+    public static int[] distinct(int[] values) {
+        int[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int unique = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[unique++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, unique);
+    }
+
+    /**
+     * Số phần tử chung của hai mảng đã sắp xếp, không trùng.
+     */
+    public static int intersectionSize(int[] a, int[] b) {
+        int i = 0, j = 0, count = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Jaccard giữa tập từ truy vấn và tập từ tài liệu, bằng calculate_jaccard_similarity trên tập từ.
+     * @param querySet Id các từ phân biệt của truy vấn có trong từ điển, đã sắp xếp.
+     * @param unknownQueryWords Số từ phân biệt của truy vấn không có trong từ điển (không thể trùng tài liệu nào).
+     * @param documentSet Id các từ phân biệt của tài liệu, đã sắp xếp.
+     */
+    public static double jaccard(int[] querySet, int unknownQueryWords, int[] documentSet) {
+        int intersection = intersectionSize(querySet, documentSet);
+        int union = querySet.length + unknownQueryWords + documentSet.length - intersection;
+        return union > 0 ? (double) intersection / union : 0.0;
+    }
+
+    /**
+     * Khóa 64 bit của id token cho MinHash.
+     */
+    public static long[] tokenKeys(int[] tokenIds) {
+        long[] keys = new long[tokenIds.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = tokenIds[i];
+        }
+        return keys;
+    }
+
+    public static byte[] pack(long[] values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Long.BYTES);
+        buffer.asLongBuffer().put(values);
+        return buffer.array();
+    }
+
+    public static byte[] packInts(int[] values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Integer.BYTES);
+        buffer.asIntBuffer().put(values);
+        return buffer.array();
+    }
+
+    public static int[] unpackInts(byte[] bytes) {
+        if (bytes == null) {
+            return new int[0];
+        }
+        int[] values = new int[bytes.length / Integer.BYTES];
+        ByteBuffer.wrap(bytes).asIntBuffer().get(values);
+        return values;
+    }
+
+    public static long[] unpack(byte[] bytes) {
+        if (bytes == null) {
+            return new long[0];
+        }
+        long[] values = new long[bytes.length / Long.BYTES];
+        ByteBuffer.wrap(bytes).asLongBuffer().get(values);
+        return values;
+    }
+}
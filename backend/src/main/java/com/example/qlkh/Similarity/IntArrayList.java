@@ -0,0 +1,62 @@
+package com.example.qlkh.Similarity;
+
+import java.util.Arrays;
+
+/**
+ * Danh sách int tăng dần kích thước, tránh boxing Integer cho danh sách id tài liệu.
+ */
+public class IntArrayList {
+
+    private int[] values;
+    private int size;
+
+    public IntArrayList() {
+        this(4);
+    }
+
+    public IntArrayList(int capacity) {
+        this.values = new int[Math.max(capacity, 1)];
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size + (size >> 1) + 1);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Xóa phần tử đầu tiên bằng value bằng cách đổi chỗ với phần tử cuối (không giữ thứ tự).
+     * @return true nếu tìm thấy phần tử.
+     */
+    public boolean removeValue(int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) {
+                values[i] = values[--size];
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int get(int index) {
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+
+    // Dung lượng mảng đã cấp phát, dùng để ước tính bộ nhớ
+    public int capacity() {
+        return values.length;
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.qlkh.Similarity;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Chỉ mục đảo từ id token ({@link TokenDictionary}) sang danh sách id tài liệu chứa từ đó.
+ * Danh sách tài liệu lưu bằng mảng int đánh chỉ số theo id token, không boxing Integer.
+ */
+public class InvertedIndex {
+
+    // Ước tính phần đầu đối tượng và tham chiếu của JVM 64 bit (compressed oops)
+    private static final int OBJECT_OVERHEAD = 16;
+    private static final int ARRAY_OVERHEAD = 16;
+    private static final int MAP_ENTRY_OVERHEAD = 48;
+
+    private IntArrayList[] postings = new IntArrayList[1 << 14];
+    private final Map<Integer, int[]> documentSlots = new HashMap<>();
+    private long postingCount;
+    // Số từ đang có ít nhất một tài liệu
+    private int tokenCount;
+    // Cập nhật khi thêm/xóa tài liệu để gauge bộ nhớ không phải duyệt toàn bộ chỉ mục
+    private volatile long estimatedBytes = arrayBytes(postings.length);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Thêm hoặc cập nhật tài liệu.
+     * @param documentId Id tài liệu.
+     * @param tokenSet Id các từ phân biệt của tài liệu.
+     */
+    public void add(int documentId, int[] tokenSet) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(documentId);
+            int[] slots = tokenSet.clone();
+            long bytes = estimatedBytes;
+            for (int slot : slots) {
+                if (slot >= postings.length) {
+                    int length = Math.max(slot + 1, postings.length * 2);
+                    bytes += arrayBytes(length) - arrayBytes(postings.length);
+                    postings = Arrays.copyOf(postings, length);
+                }
+                if (postings[slot] == null) {
+                    postings[slot] = new IntArrayList(2);
+                    bytes += listBytes(postings[slot].capacity());
+                }
+                IntArrayList list = postings[slot];
+                if (list.size() == 0) {
+                    tokenCount++;
+                }
+                int capacity = list.capacity();
+                list.add(documentId);
+                bytes += listBytes(list.capacity()) - listBytes(capacity);
+            }
+            documentSlots.put(documentId, slots);
+            postingCount += slots.length;
+            estimatedBytes = bytes + slotsBytes(slots.length);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int documentId) {
+        lock.writeLock().lock();
+        try {
+            removeLocked(documentId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            Arrays.fill(postings, null);
+            documentSlots.clear();
+            postingCount = 0;
+            tokenCount = 0;
+            estimatedBytes = arrayBytes(postings.length);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Các tài liệu có ít nhất một từ chung với truy vấn; tài liệu không chung từ nào không bao giờ được chấm điểm.
+     * @param tokenSet Id các từ phân biệt của văn bản truy vấn (id âm bị bỏ qua).
+     * @return Id tài liệu, sắp xếp tăng dần.
+     */
+    public int[] candidates(int[] tokenSet) {
+        BitSet found = new BitSet();
+        lock.readLock().lock();
+        try {
+            for (int slot : tokenSet) {
+                if (slot < 0 || slot >= postings.length || postings[slot] == null) {
+                    continue;
+                }
+                IntArrayList list = postings[slot];
+                for (int i = 0; i < list.size(); i++) {
+                    found.set(list.get(i));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return found.stream().toArray();
+    }
+
+    /**
+     * Số từ phân biệt của tài liệu, -1 nếu tài liệu không có trong chỉ mục.
+     */
+    public int distinctWordCount(int documentId) {
+        lock.readLock().lock();
+        try {
+            int[] slots = documentSlots.get(documentId);
+            return slots != null ? slots.length : -1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Id các từ phân biệt của tài liệu (tăng dần), null nếu tài liệu không có trong chỉ mục.
+     * Mảng trả về dùng chung với chỉ mục, không được sửa.
+     */
+    public int[] tokenSet(int documentId) {
+        lock.readLock().lock();
+        try {
+            return documentSlots.get(documentId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int documentCount() {
+        lock.readLock().lock();
+        try {
+            return documentSlots.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int tokenCount() {
+        lock.readLock().lock();
+        try {
+            return tokenCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long postingCount() {
+        lock.readLock().lock();
+        try {
+            return postingCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ước tính bộ nhớ heap đang dùng (byte), gồm danh sách tài liệu và ánh xạ tài liệu sang slot
+     * (không gồm từ điển dùng chung). Đọc giá trị đã cập nhật khi thêm/xóa, không lấy khóa.
+     */
+    public long estimatedBytes() {
+        return estimatedBytes;
+    }
+
+    private void removeLocked(int documentId) {
+        int[] slots = documentSlots.remove(documentId);
+        if (slots == null) {
+            return;
+        }
+        for (int slot : slots) {
+            postings[slot].removeValue(documentId);
+            if (postings[slot].size() == 0) {
+                tokenCount--;
+            }
+        }
+        postingCount -= slots.length;
+        // Danh sách tài liệu của từ không bị thu nhỏ khi xóa, chỉ phần ánh xạ tài liệu được trả lại
+        estimatedBytes -= slotsBytes(slots.length);
+    }
+
+    private static long arrayBytes(int length) {
+        return ARRAY_OVERHEAD + (long) length * 4;
+    }
+
+    private static long listBytes(int capacity) {
+        return OBJECT_OVERHEAD + ARRAY_OVERHEAD + (long) capacity * Integer.BYTES;
+    }
+
+    private static long slotsBytes(int length) {
+        return MAP_ENTRY_OVERHEAD + ARRAY_OVERHEAD + (long) length * Integer.BYTES;
+    }
+}
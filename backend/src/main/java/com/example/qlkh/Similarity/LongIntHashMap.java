@@ -0,0 +1,110 @@
+package com.example.qlkh.Similarity;
+
+import java.util.Arrays;
+
+/**
+ * Bảng băm địa chỉ mở (dò tuyến tính) từ khóa long sang giá trị int không âm, không boxing.
+ * Không hỗ trợ xóa khóa; giá trị -1 đánh dấu ô trống.
+ */
+public class LongIntHashMap {
+
+    public static final int NO_VALUE = -1;
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int resizeAt;
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) * 2 - 1);
+        allocate(capacity);
+    }
+
+    /**
+     * @return Giá trị của key, hoặc {@link #NO_VALUE} nếu không có.
+     */
+    public int get(long key) {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (values[i] != NO_VALUE) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return NO_VALUE;
+    }
+
+    /**
+     * Gán giá trị cho key nếu chưa có.
+     * @return Giá trị hiện có của key, hoặc value nếu vừa thêm.
+     */
+    public int putIfAbsent(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Value must be non-negative");
+        }
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (values[i] != NO_VALUE) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size >= resizeAt) {
+            rehash();
+        }
+        return value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(values, NO_VALUE);
+        size = 0;
+    }
+
+    // Dung lượng các mảng đã cấp phát, tính bằng byte
+    public long estimatedBytes() {
+        return (long) keys.length * Long.BYTES + (long) values.length * Integer.BYTES;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, NO_VALUE);
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldValues[j] == NO_VALUE) {
+                continue;
+            }
+            int i = slot(oldKeys[j], mask);
+            while (values[i] != NO_VALUE) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) TokenHash.mix64(key) & mask;
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.qlkh.Similarity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Chỉ mục MinHash + LSH trên tập từ của tài liệu để lọc nhanh các ứng viên gần trùng.
+ * Chữ ký gồm bands * rows giá trị MinHash; hai tài liệu là ứng viên nếu trùng ít nhất một band.
+ * Xác suất trùng một band xấp xỉ 1 - (1 - J^rows)^bands với J là độ tương đồng Jaccard.
+ */
+public class MinHashLshIndex {
+
+    private final int bands;
+    private final int rows;
+    private final long[] seeds;
+
+    private final Map<Integer, int[]> signatures = new HashMap<>();
+    private final List<Map<Long, IntArrayList>> buckets;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public MinHashLshIndex(int bands, int rows) {
+        if (bands <= 0 || rows <= 0) {
+            throw new IllegalArgumentException("LSH bands and rows must be positive");
+        }
+        this.bands = bands;
+        this.rows = rows;
+        this.seeds = new long[bands * rows];
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < seeds.length; i++) {
+            seed += 0x9E3779B97F4A7C15L;
+            seeds[i] = TokenHash.mix64(seed);
+        }
+        this.buckets = new ArrayList<>(bands);
+        for (int b = 0; b < bands; b++) {
+            buckets.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Thêm hoặc cập nhật tài liệu trong chỉ mục.
+     * @param documentId Id tài liệu.
+     * @param wordHashes Hash các từ phân biệt của tài liệu.
+     */
+    public void add(int documentId, long[] wordHashes) {
+        if (wordHashes.length == 0) {
+            remove(documentId);
+            return;
+        }
+        int[] signature = signature(wordHashes);
+        lock.writeLock().lock();
+        try {
+            int[] previous = signatures.put(documentId, signature);
+            if (previous != null) {
+                removeFromBuckets(documentId, previous);
+            }
+            for (int b = 0; b < bands; b++) {
+                buckets.get(b).computeIfAbsent(bandKey(signature, b), k -> new IntArrayList(2)).add(documentId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int documentId) {
+        lock.writeLock().lock();
+        try {
+            int[] previous = signatures.remove(documentId);
+            if (previous != null) {
+                removeFromBuckets(documentId, previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            signatures.clear();
+            buckets.forEach(Map::clear);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Tìm các tài liệu trùng ít nhất một band với tập từ truy vấn.
+     * @param wordHashes Hash các từ phân biệt của văn bản truy vấn.
+     * @return Id tài liệu ứng viên, sắp xếp tăng dần.
+     */
+    public int[] candidates(long[] wordHashes) {
+        if (wordHashes.length == 0) {
+            return new int[0];
+        }
+        int[] signature = signature(wordHashes);
+        IntArrayList found = new IntArrayList();
+        lock.readLock().lock();
+        try {
+            for (int b = 0; b < bands; b++) {
+                IntArrayList bucket = buckets.get(b).get(bandKey(signature, b));
+                if (bucket == null) {
+                    continue;
+                }
+                for (int i = 0; i < bucket.size(); i++) {
+                    found.add(bucket.get(i));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        int[] ids = found.toArray();
+        Arrays.sort(ids);
+        int unique = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) {
+                ids[unique++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, unique);
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return signatures.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getBands() {
+        return bands;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    private int[] signature(long[] wordHashes) {
+        int[] signature = new int[seeds.length];
+        for (int i = 0; i < seeds.length; i++) {
+            long min = Long.MAX_VALUE;
+            for (long hash : wordHashes) {
+                long value = TokenHash.mix64(hash ^ seeds[i]);
+                if (value < min) {
+                    min = value;
+                }
+            }
+            signature[i] = (int) (min >>> 32);
+        }
+        return signature;
+    }
+
+    private long bandKey(int[] signature, int band) {
+        long key = band;
+        int offset = band * rows;
+        for (int r = 0; r < rows; r++) {
+            key = TokenHash.mix64(key * 31 + signature[offset + r]);
+        }
+        return key;
+    }
+
+    private void removeFromBuckets(int documentId, int[] signature) {
+        for (int b = 0; b < bands; b++) {
+            Map<Long, IntArrayList> band = buckets.get(b);
+            long key = bandKey(signature, b);
+            IntArrayList bucket = band.get(key);
+            if (bucket != null) {
+                bucket.removeValue(documentId);
+                if (bucket.isEmpty()) {
+                    band.remove(key);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.qlkh.Similarity;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bản port của difflib.SequenceMatcher(None, a, b) (autojunk=True) trên mảng token đã mã hóa int.
+ * Chỉ hỗ trợ get_matching_blocks, đủ cho find_common_text.
+ */
+public class SequenceMatcher {
+
+    private static final int[] NOTHING = new int[0];
+
+    private final int[] a;
+    private final int[] b;
+    private final Map<Integer, int[]> b2j = new HashMap<>();
+
+    public SequenceMatcher(int[] a, int[] b) {
+        this.a = a;
+        this.b = b;
+        chainB();
+    }
+
+    private void chainB() {
+        Map<Integer, List<Integer>> indices = new HashMap<>();
+        for (int j = 0; j < b.length; j++) {
+            indices.computeIfAbsent(b[j], k -> new ArrayList<>()).add(j);
+        }
+        // Heuristic "popular" của difflib: bỏ các phần tử xuất hiện quá 1% khi b dài từ 200 phần tử
+        int ntest = b.length / 100 + 1;
+        boolean autojunk = b.length >= 200;
+        for (Map.Entry<Integer, List<Integer>> entry : indices.entrySet()) {
+            List<Integer> js = entry.getValue();
+            if (autojunk && js.size() > ntest) {
+                continue;
+            }
+            int[] arr = new int[js.size()];
+            for (int i = 0; i < arr.length; i++) {
+                arr[i] = js.get(i);
+            }
+            b2j.put(entry.getKey(), arr);
+        }
+    }
+
+    /**
+     * Tương đương find_longest_match(alo, ahi, blo, bhi).
+     * @return Mảng {i, j, size}.
+     */
+    public int[] findLongestMatch(int alo, int ahi, int blo, int bhi) {
+        int besti = alo;
+        int bestj = blo;
+        int bestsize = 0;
+        Map<Integer, Integer> j2len = new HashMap<>();
+        for (int i = alo; i < ahi; i++) {
+            Map<Integer, Integer> newj2len = new HashMap<>();
+            for (int j : b2j.getOrDefault(a[i], NOTHING)) {
+                if (j < blo) {
+                    continue;
+                }
+                if (j >= bhi) {
+                    break;
+                }
+                int k = j2len.getOrDefault(j - 1, 0) + 1;
+                newj2len.put(j, k);
+                if (k > bestsize) {
+                    besti = i - k + 1;
+                    bestj = j - k + 1;
+                    bestsize = k;
+                }
+            }
+            j2len = newj2len;
+        }
+
+        // Không có isjunk nên bjunk rỗng: mở rộng qua cả các phần tử "popular"
+        while (besti > alo && bestj > blo && a[besti - 1] == b[bestj - 1]) {
+            besti--;
+            bestj--;
+            bestsize++;
+        }
+        while (besti + bestsize < ahi && bestj + bestsize < bhi && a[besti + bestsize] == b[bestj + bestsize]) {
+            bestsize++;
+        }
+        return new int[]{besti, bestj, bestsize};
+    }
+
+    /**
+     * Tương đương get_matching_blocks(): các khối khớp đã gộp khối liền kề,
+     * kết thúc bằng khối (len(a), len(b), 0).
+     */
+    public List<int[]> getMatchingBlocks() {
+        Deque<int[]> queue = new ArrayDeque<>();
+        queue.push(new int[]{0, a.length, 0, b.length});
+        List<int[]> blocks = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            int[] range = queue.pop();
+            int alo = range[0], ahi = range[1], blo = range[2], bhi = range[3];
+            int[] match = findLongestMatch(alo, ahi, blo, bhi);
+            int i = match[0], j = match[1], k = match[2];
+            if (k > 0) {
+                blocks.add(match);
+                if (alo < i && blo < j) {
+                    queue.push(new int[]{alo, i, blo, j});
+                }
+                if (i + k < ahi && j + k < bhi) {
+                    queue.push(new int[]{i + k, ahi, j + k, bhi});
+                }
+            }
+        }
+        blocks.sort(Comparator.<int[]>comparingInt(m -> m[0]).thenComparingInt(m -> m[1]).thenComparingInt(m -> m[2]));
+
+        List<int[]> nonAdjacent = new ArrayList<>();
+        int i1 = 0, j1 = 0, k1 = 0;
+        for (int[] block : blocks) {
+            if (i1 + k1 == block[0] && j1 + k1 == block[1]) {
+                k1 += block[2];
+            } else {
+                if (k1 > 0) {
+                    nonAdjacent.add(new int[]{i1, j1, k1});
+                }
+                i1 = block[0];
+                j1 = block[1];
+                k1 = block[2];
+            }
+        }
+        if (k1 > 0) {
+            nonAdjacent.add(new int[]{i1, j1, k1});
+        }
+        nonAdjacent.add(new int[]{a.length, b.length, 0});
+        return nonAdjacent;
+    }
+}
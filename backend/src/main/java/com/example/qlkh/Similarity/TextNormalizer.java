@@ -0,0 +1,264 @@
+package com.example.qlkh.Similarity;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Chuẩn hóa và tách từ cho chỉ mục so sánh, quét một lượt trên mảng char (không dùng regex).
+ * Các bước: NFKC, bỏ ký tự không phải \w, chữ thường, tách theo khoảng trắng (giống preprocess_text),
+ * sau đó tùy chọn:
+ * <ul>
+ *     <li>bỏ dấu tiếng Việt (ế → e, ư → u, đ → d),</li>
+ *     <li>đổi ký tự OCR hay nhận nhầm (chữ Cyrillic/Hy Lạp giống chữ Latin; 0/1/5 trong từ có chữ cái),</li>
+ *     <li>bỏ stop word.</li>
+ * </ul>
+ * Khi tắt cả ba tùy chọn, kết quả giống hệt preprocess_text của Python service.
+ * Instance không thay đổi sau khi tạo và an toàn luồng.
+ */
+public class TextNormalizer {
+
+    // Bảng bỏ dấu cho ký tự BMP nhỏ hơn FOLD_LIMIT; 0 = giữ nguyên
+    private static final int FOLD_LIMIT = 0x2000;
+    private static final char[] FOLD = buildFoldTable();
+
+    private static final char[] CONFUSABLES = buildConfusableTable();
+
+    /** Cấu hình giống hệt preprocess_text(text).split() của Python. */
+    public static final TextNormalizer PYTHON_COMPATIBLE = new TextNormalizer(false, false, List.of());
+
+    private final boolean foldDiacritics;
+    private final boolean mapConfusables;
+    private final long[] stopWordHashes;
+
+    /**
+     * @param foldDiacritics Bỏ dấu thanh và dấu phụ.
+     * @param mapConfusables Đổi ký tự OCR hay nhận nhầm.
+     * @param stopWords Các từ cần bỏ, được chuẩn hóa cùng cấu hình trước khi so khớp.
+     */
+    public TextNormalizer(boolean foldDiacritics, boolean mapConfusables, Collection<String> stopWords) {
+        this.foldDiacritics = foldDiacritics;
+        this.mapConfusables = mapConfusables;
+        this.stopWordHashes = stopWords.isEmpty()
+                ? new long[0]
+                : Fingerprints.distinct(new TextNormalizer(foldDiacritics, mapConfusables, List.of())
+                        .hashes(String.join(" ", stopWords)));
+    }
+
+    /**
+     * Các từ đã chuẩn hóa theo thứ tự trong văn bản.
+     */
+    public List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        scan(text, (word, length, hash) -> words.add(new String(word, 0, length)));
+        return words;
+    }
+
+    /**
+     * Hash ({@link TokenHash#hash64}) của các từ đã chuẩn hóa theo thứ tự, không tạo String cho từng từ.
+     */
+    public long[] hashes(String text) {
+        LongBuffer hashes = new LongBuffer();
+        scan(text, (word, length, hash) -> hashes.add(hash));
+        return hashes.toArray();
+    }
+
+    /**
+     * Id token của các từ đã chuẩn hóa, lấy từ từ điển dùng chung; -1 cho từ chưa có trong từ điển.
+     */
+    public int[] tokenIds(String text, TokenDictionary dictionary) {
+        return dictionary.lookup(hashes(text));
+    }
+
+    public boolean isPythonCompatible() {
+        return !foldDiacritics && !mapConfusables && stopWordHashes.length == 0;
+    }
+
+    /**
+     * Số nhận diện cấu hình, 0 với cấu hình giống Python; dùng để biết fingerprint đã lưu có cần tính lại không.
+     */
+    public int signature() {
+        if (isPythonCompatible()) {
+            return 0;
+        }
+        long h = Arrays.hashCode(stopWordHashes);
+        h = h * 31 + (foldDiacritics ? 1 : 0);
+        h = h * 31 + (mapConfusables ? 1 : 0);
+        // Khác 0, vừa 20 bit
+        return (int) (TokenHash.mix64(h) & 0xFFFFF) | 1;
+    }
+
+    private void scan(String text, WordSink sink) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        String normalized = Normalizer.isNormalized(text, Normalizer.Form.NFKC)
+                ? text
+                : Normalizer.normalize(text, Normalizer.Form.NFKC);
+        char[] chars = normalized.toCharArray();
+        char[] word = new char[32];
+        int length = 0;
+        boolean hasLetter = false;
+
+        int i = 0;
+        while (i <= chars.length) {
+            int cp = i < chars.length ? Character.codePointAt(chars, i) : ' ';
+            int next = i < chars.length ? i + Character.charCount(cp) : i + 1;
+            if (TextSimilarity.isPythonWhitespace(cp)) {
+                if (length > 0) {
+                    finishWord(word, length, hasLetter);
+                    long hash = TokenHash.hash64(word, 0, length);
+                    if (!isStopWord(hash)) {
+                        sink.accept(word, length, hash);
+                    }
+                }
+                length = 0;
+                hasLetter = false;
+            } else if (TextSimilarity.isPythonWordChar(cp)) {
+                hasLetter |= Character.isLetter(cp);
+                if (length + 2 > word.length) {
+                    word = Arrays.copyOf(word, word.length * 2);
+                }
+                // Chữ thường như str.lower(): İ thành "i̇", Σ cuối từ thành ς
+                if (cp == 0x130) {
+                    word[length++] = 'i';
+                    word[length++] = '\u0307';
+                } else if (cp == 0x3A3) {
+                    char sigma = isFinalSigma(word, length, chars, next) ? 'ς' : 'σ';
+                    word[length++] = sigma;
+                } else {
+                    length += Character.toChars(Character.toLowerCase(cp), word, length);
+                }
+            }
+            i = next;
+        }
+    }
+
+    // Quy tắc Final_Sigma của CPython: trước Σ (bỏ qua ký tự case-ignorable) là chữ có hoa/thường
+    // và sau Σ thì không. Ký tự không phải \w đã bị bỏ trước khi chuyển chữ thường nên được bỏ qua.
+    private static boolean isFinalSigma(char[] word, int length, char[] chars, int after) {
+        int j = length;
+        int before = -1;
+        while (j > 0) {
+            int cp = Character.codePointBefore(word, j);
+            if (!isCaseIgnorable(cp)) {
+                before = cp;
+                break;
+            }
+            j -= Character.charCount(cp);
+        }
+        if (before < 0 || !isCased(before)) {
+            return false;
+        }
+        int i = after;
+        while (i < chars.length) {
+            int cp = Character.codePointAt(chars, i);
+            if (TextSimilarity.isPythonWhitespace(cp)) {
+                return true;
+            }
+            if (TextSimilarity.isPythonWordChar(cp) && !isCaseIgnorable(cp)) {
+                return !isCased(cp);
+            }
+            i += Character.charCount(cp);
+        }
+        return true;
+    }
+
+    private static boolean isCased(int cp) {
+        return Character.isLowerCase(cp) || Character.isUpperCase(cp) || Character.isTitleCase(cp);
+    }
+
+    private static boolean isCaseIgnorable(int cp) {
+        switch (Character.getType(cp)) {
+            case Character.NON_SPACING_MARK:
+            case Character.ENCLOSING_MARK:
+            case Character.FORMAT:
+            case Character.MODIFIER_LETTER:
+            case Character.MODIFIER_SYMBOL:
+                return true;
+            default:
+                return cp == '\'' || cp == '.' || cp == ':' || cp == 0xB7 || cp == 0x2019;
+        }
+    }
+
+    // Bỏ dấu và đổi ký tự nhầm ngay trên mảng; mỗi char được thay bằng đúng một char
+    private void finishWord(char[] word, int length, boolean hasLetter) {
+        if (!foldDiacritics && !mapConfusables) {
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = word[i];
+            if (foldDiacritics && c < FOLD_LIMIT && FOLD[c] != 0) {
+                c = FOLD[c];
+            }
+            if (mapConfusables && c < CONFUSABLES.length && CONFUSABLES[c] != 0
+                    && (!Character.isDigit(c) || hasLetter)) {
+                c = CONFUSABLES[c];
+            }
+            word[i] = c;
+        }
+    }
+
+    private boolean isStopWord(long hash) {
+        return stopWordHashes.length > 0 && Arrays.binarySearch(stopWordHashes, hash) >= 0;
+    }
+
+    // Ký tự có dạng NFD là một chữ cái cơ sở kèm các dấu kết hợp thì được đổi về chữ cái cơ sở
+    private static char[] buildFoldTable() {
+        char[] table = new char[FOLD_LIMIT];
+        for (char c = 0x80; c < FOLD_LIMIT; c++) {
+            String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+            if (decomposed.length() < 2 || !Character.isLetter(decomposed.charAt(0))) {
+                continue;
+            }
+            boolean marksOnly = true;
+            for (int i = 1; i < decomposed.length(); i++) {
+                marksOnly &= Character.getType(decomposed.charAt(i)) == Character.NON_SPACING_MARK;
+            }
+            if (marksOnly) {
+                table[c] = decomposed.charAt(0);
+            }
+        }
+        table['đ'] = 'd';
+        table['Đ'] = 'D';
+        return table;
+    }
+
+    private static char[] buildConfusableTable() {
+        char[] table = new char[0x0530];
+        String[] pairs = {
+                // Cyrillic
+                "аa", "вb", "еe", "кk", "мm", "нh", "оo", "рp", "сc", "тt", "уy", "хx", "іi", "јj", "ѕs", "ԁd",
+                // Hy Lạp
+                "αa", "ιi", "κk", "νv", "οo", "ρp", "τt", "υu", "χx",
+                // Chữ số nằm trong từ có chữ cái
+                "0o", "1l", "5s"
+        };
+        for (String pair : pairs) {
+            table[pair.charAt(0)] = pair.charAt(1);
+        }
+        return table;
+    }
+
+    private interface WordSink {
+        void accept(char[] word, int length, long hash);
+    }
+
+    private static final class LongBuffer {
+        private long[] values = new long[64];
+        private int size;
+
+        private void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        private long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
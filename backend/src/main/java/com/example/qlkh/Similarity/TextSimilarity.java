@@ -0,0 +1,101 @@
+package com.example.qlkh.Similarity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bản Java của các hàm tiền xử lý và so sánh trong python-service/app/ocr_service.py
+ * (preprocess_text, find_common_text); Jaccard trên tập hash từ nằm ở {@link Fingerprints}.
+ * Kết quả phải giống hệt phía Python để hai endpoint so sánh trả về cùng điểm số.
+ */
+public final class TextSimilarity {
+
+    /** Số từ tối thiểu của một đoạn trùng lặp (threshold trong find_common_text). */
+    public static final int COMMON_TEXT_THRESHOLD = 3;
+
+    // Mỗi luồng một instance vì CommonPassageFinder dùng lại mảng tạm
+    private static final ThreadLocal<CommonPassageFinder> PASSAGE_FINDER =
+            ThreadLocal.withInitial(() -> new CommonPassageFinder(COMMON_TEXT_THRESHOLD));
+
+    private TextSimilarity() {
+    }
+
+    /**
+     * Tương đương preprocess_text(text).split(): chuẩn hóa NFKC, bỏ ký tự không phải \w,
+     * chuyển chữ thường và tách theo khoảng trắng.
+     * @param text Văn bản gốc.
+     * @return Danh sách từ đã chuẩn hóa.
+     */
+    public static List<String> preprocessWords(String text) {
+        return TextNormalizer.PYTHON_COMPATIBLE.words(text);
+    }
+
+    /**
+     * Tương đương len(text.split()) của Python.
+     * @param text Văn bản gốc.
+     * @return Số từ tách theo khoảng trắng.
+     */
+    public static int countWords(String text) {
+        if (text == null) {
+            return 0;
+        }
+        int count = 0;
+        boolean inWord = false;
+        int i = 0;
+        while (i < text.length()) {
+            int cp = text.codePointAt(i);
+            i += Character.charCount(cp);
+            if (isPythonWhitespace(cp)) {
+                inWord = false;
+            } else if (!inWord) {
+                inWord = true;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Các đoạn trùng lặp giữa văn bản OCR và tài liệu, lấy từ phía văn bản OCR.
+     * @param ocrWords Từ của văn bản OCR.
+     * @param ocrTokens Id token của từng từ OCR (âm nếu từ không có trong kho tài liệu).
+     * @param dbTokens Id token của từng từ trong tài liệu.
+     * @param difflib true để dùng bản port SequenceMatcher (giống hệt find_common_text của Python),
+     *                false để dùng {@link CommonPassageFinder} gần tuyến tính.
+     * @return Các đoạn có ít nhất {@link #COMMON_TEXT_THRESHOLD} từ.
+     */
+    public static List<String> findCommonText(List<String> ocrWords, int[] ocrTokens, int[] dbTokens, boolean difflib) {
+        List<String> matches = new ArrayList<>();
+        if (difflib) {
+            for (int[] block : new SequenceMatcher(ocrTokens, dbTokens).getMatchingBlocks()) {
+                if (block[2] >= COMMON_TEXT_THRESHOLD) {
+                    matches.add(String.join(" ", ocrWords.subList(block[0], block[0] + block[2])));
+                }
+            }
+            return matches;
+        }
+        CommonPassageFinder finder = PASSAGE_FINDER.get();
+        int blocks = finder.find(ocrTokens, dbTokens);
+        for (int i = 0; i < blocks; i++) {
+            int start = finder.queryStart(i);
+            matches.add(String.join(" ", ocrWords.subList(start, start + finder.length(i))));
+        }
+        return matches;
+    }
+
+    // str.isspace() của Python
+    static boolean isPythonWhitespace(int cp) {
+        return Character.isWhitespace(cp) || Character.isSpaceChar(cp) || cp == 0x85;
+    }
+
+    // \w của Python ở chế độ unicode: str.isalnum() hoặc '_'
+    static boolean isPythonWordChar(int cp) {
+        if (cp == '_' || Character.isLetter(cp)) {
+            return true;
+        }
+        int type = Character.getType(cp);
+        return type == Character.DECIMAL_DIGIT_NUMBER
+                || type == Character.LETTER_NUMBER
+                || type == Character.OTHER_NUMBER;
+    }
+}
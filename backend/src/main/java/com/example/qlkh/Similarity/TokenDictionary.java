@@ -0,0 +1,82 @@
+package com.example.qlkh.Similarity;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Từ điển dùng chung từ hash từ đã chuẩn hóa ({@link TokenHash#hash64}) sang id int liên tục từ 0.
+ * Id không bao giờ bị thu hồi nên cùng một từ luôn có cùng id; chỉ mục đảo, Jaccard và so khớp
+ * đoạn trùng lặp dùng id này thay vì String. Việc cấp id mới và lưu xuống DB do TokenDictionaryService đảm nhận.
+ */
+public class TokenDictionary {
+
+    private final LongIntHashMap ids = new LongIntHashMap(1 << 14);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Thêm từ với id đã cấp.
+     */
+    public void put(long hash, int id) {
+        lock.writeLock().lock();
+        try {
+            ids.putIfAbsent(hash, id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return Id của từ, hoặc -1 nếu từ chưa có trong từ điển.
+     */
+    public int idOf(long hash) {
+        lock.readLock().lock();
+        try {
+            return ids.get(hash);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Id của từng từ, -1 cho từ chưa có; không thêm từ mới.
+     */
+    public int[] lookup(long[] hashes) {
+        int[] result = new int[hashes.length];
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < hashes.length; i++) {
+                result[i] = ids.get(hashes[i]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            ids.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return ids.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long estimatedBytes() {
+        lock.readLock().lock();
+        try {
+            return ids.estimatedBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.qlkh.Similarity;
+
+/**
+ * Hàm băm 64 bit ổn định cho từ đã chuẩn hóa (không phụ thuộc String.hashCode hay JVM).
+ */
+public final class TokenHash {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private TokenHash() {
+    }
+
+    /**
+     * FNV-1a trên các ký tự UTF-16, sau đó trộn bằng bước kết thúc của SplitMix64.
+     */
+    public static long hash64(CharSequence word) {
+        long h = FNV_OFFSET;
+        for (int i = 0; i < word.length(); i++) {
+            h ^= word.charAt(i);
+            h *= FNV_PRIME;
+        }
+        return mix64(h);
+    }
+
+    /**
+     * Như {@link #hash64(CharSequence)} trên đoạn chars[from, to), không cần tạo String.
+     */
+    public static long hash64(char[] chars, int from, int to) {
+        long h = FNV_OFFSET;
+        for (int i = from; i < to; i++) {
+            h ^= chars[i];
+            h *= FNV_PRIME;
+        }
+        return mix64(h);
+    }
+
+    // Bước kết thúc của SplitMix64
+    public static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.qlkh.Similarity;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Giữ k phần tử tốt nhất theo thứ tự ranking bằng heap có giới hạn (phần tử kém nhất ở đỉnh),
+ * chi phí O(n log k) thay vì sắp xếp toàn bộ danh sách.
+ */
+public class TopK<T> {
+
+    private final int k;
+    private final Comparator<? super T> ranking;
+    private final PriorityQueue<T> heap;
+
+    /**
+     * @param k Số phần tử tối đa cần giữ.
+     * @param ranking Thứ tự từ tốt nhất đến kém nhất.
+     */
+    public TopK(int k, Comparator<? super T> ranking) {
+        this.k = k;
+        this.ranking = ranking;
+        this.heap = new PriorityQueue<>(Math.min(k, 64) + 1, ranking.reversed());
+    }
+
+    public void add(T item) {
+        if (heap.size() < k) {
+            heap.add(item);
+        } else if (ranking.compare(item, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(item);
+        }
+    }
+
+    public TopK<T> merge(TopK<T> other) {
+        for (T item : other.heap) {
+            add(item);
+        }
+        return this;
+    }
+
+    public int size() {
+        return heap.size();
+    }
+
+    /**
+     * Phần tử kém nhất đang giữ, null nếu chưa đủ k phần tử.
+     */
+    public T worstIfFull() {
+        return heap.size() < k ? null : heap.peek();
+    }
+
+    /**
+     * Các phần tử đang giữ, sắp xếp từ tốt nhất đến kém nhất.
+     */
+    public List<T> toSortedList() {
+        List<T> items = new ArrayList<>(heap);
+        items.sort(ranking);
+        return items;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.qlkh;
+
+import com.example.qlkh.Similarity.TextNormalizer;
+import com.example.qlkh.Similarity.TokenDictionary;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.example.qlkh.Controller.OCRController.logger;
+
+@Configuration
+public class SimilarityConfig {
+
+    // Mặc định tắt các tùy chọn để kết quả giống hệt Python service
+    @Bean
+    public TextNormalizer textNormalizer(@Value("${similarity.normalizer.fold-diacritics:false}") boolean foldDiacritics,
+                                         @Value("${similarity.normalizer.map-confusables:false}") boolean mapConfusables,
+                                         @Value("${similarity.normalizer.stop-words:}") String[] stopWords) {
+        List<String> words = Arrays.stream(stopWords).map(String::strip).filter(w -> !w.isEmpty()).toList();
+        TextNormalizer normalizer = new TextNormalizer(foldDiacritics, mapConfusables, words);
+        if (!normalizer.isPythonCompatible()) {
+            logger.info("Text normalizer: foldDiacritics={}, mapConfusables={}, {} stop words.",
+                    foldDiacritics, mapConfusables, words.size());
+        }
+        return normalizer;
+    }
+
+    @Bean
+    public TokenDictionary tokenDictionary() {
+        return new TokenDictionary();
+    }
+}
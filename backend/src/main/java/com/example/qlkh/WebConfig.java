@@ -3,11 +3,7 @@ package com.example.qlkh;
 import com.example.qlkh.Service.Impl.DocumentServiceImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.http.client.BufferingClientHttpRequestFactory;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -25,14 +21,4 @@ public class WebConfig implements WebMvcConfigurer {
                 .exposedHeaders("Authorization", "Content-Type") // Expose headers if needed
                 .allowCredentials(true);
     }
-    @Bean
-    public RestTemplate restTemplate() {
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setBufferRequestBody(true); // Cho phép buffer request body
-        factory.setConnectTimeout(60000);
-        factory.setReadTimeout(200000);
-
-        return new RestTemplate(new BufferingClientHttpRequestFactory(factory));
-    }
 }
-
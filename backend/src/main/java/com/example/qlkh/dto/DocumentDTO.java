@@ -16,4 +16,5 @@ public class DocumentDTO {
     private String filePath;
     private String extractedText;
     private String createdAt;
+    private String contentHash;
 }
@@ -0,0 +1,10 @@
+package com.example.qlkh.dto;
+
+// Projection chỉ lấy các cột cần khi tải file, không nạp văn bản và danh sách tác giả
+public interface DocumentFileView {
+    String getFilePath();
+
+    String getFileName();
+
+    String getContentHash();
+}
@@ -0,0 +1,16 @@
+package com.example.qlkh.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Một trang tìm thấy; documentId null nghĩa là file vẫn đang được nhập
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentPageDTO {
+    private Long jobFileId;
+    private Integer documentId;
+    private int pageNumber;
+    private String text;
+}
@@ -0,0 +1,10 @@
+package com.example.qlkh.dto;
+
+// Projection chỉ lấy các cột cần cho so sánh văn bản
+public interface DocumentTextView {
+    Integer getId();
+
+    String getFileName();
+
+    String getExtractedText();
+}
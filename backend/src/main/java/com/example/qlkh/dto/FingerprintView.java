@@ -0,0 +1,16 @@
+package com.example.qlkh.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+// Fingerprint kèm tên file, không chứa văn bản gốc
+@Data
+@AllArgsConstructor
+public class FingerprintView {
+    private Integer documentId;
+    private String fileName;
+    private Integer rawWordCount;
+    private byte[] tokenIds;
+    private byte[] tokenSet;
+    private byte[] shingleHashes;
+}
@@ -0,0 +1,40 @@
+package com.example.qlkh.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Tiến độ công việc nhập tài liệu, theo từng file
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestionJobDTO {
+    private Long id;
+    private String status;
+    private int totalFiles;
+    private int completedFiles;
+    private int failedFiles;
+    private int deduplicatedFiles;
+    private String error;
+    private String createdAt;
+    private String startedAt;
+    private String finishedAt;
+    private List<FileStatus> files;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class FileStatus {
+        private int position;
+        private String fileName;
+        private String status;
+        private int attempts;
+        private Integer documentId;
+        private boolean deduplicated;
+        private Integer totalPages;
+        private int completedPages;
+        private String error;
+    }
+}
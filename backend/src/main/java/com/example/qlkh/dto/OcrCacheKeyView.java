@@ -0,0 +1,8 @@
+package com.example.qlkh.dto;
+
+// Projection chỉ lấy khóa và dung lượng khi dọn cache OCR, không nạp nội dung kết quả
+public interface OcrCacheKeyView {
+    String getCacheKey();
+
+    long getSizeBytes();
+}
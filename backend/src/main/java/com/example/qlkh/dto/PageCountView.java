@@ -0,0 +1,8 @@
+package com.example.qlkh.dto;
+
+// Số trang đã OCR xong của một file trong công việc nhập tài liệu
+public interface PageCountView {
+    Long getJobFileId();
+
+    long getPages();
+}
@@ -0,0 +1,26 @@
+package com.example.qlkh.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Giữ nguyên tên trường như kết quả calculate_similarity của Python service
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SimilarityResultDTO {
+    @JsonProperty("document_id")
+    private Integer documentId;
+
+    @JsonProperty("fileName")
+    private String fileName;
+
+    @JsonProperty("jaccard_similarity")
+    private double jaccardSimilarity;
+
+    @JsonProperty("common_texts")
+    private List<String> commonTexts;
+}
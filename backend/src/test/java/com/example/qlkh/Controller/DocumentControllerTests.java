@@ -0,0 +1,181 @@
+package com.example.qlkh.Controller;
+
+import com.example.qlkh.Service.DocumentIngestionService;
+import com.example.qlkh.Service.DocumentService;
+import com.example.qlkh.Service.FileStorageService;
+import com.example.qlkh.dto.DocumentFileView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(DocumentController.class)
+class DocumentControllerTests {
+
+    private static final String HASH = "3b1f0c";
+    private static final String ETAG = "\"" + HASH + "\"";
+
+    @TempDir
+    Path storageDir;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private DocumentService documentService;
+
+    @MockBean
+    private DocumentIngestionService ingestionService;
+
+    @MockBean
+    private FileStorageService fileStorageService;
+
+    private byte[] content;
+
+    @BeforeEach
+    void storeFile() throws Exception {
+        content = new byte[1000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        Path file = Files.write(storageDir.resolve("hop-dong.pdf"), content);
+        when(fileStorageService.resolve("stored/hop-dong.pdf")).thenReturn(file);
+        when(documentService.getDocumentFileById(1)).thenReturn(fileView(HASH));
+        // Tài liệu cũ chưa có hash nội dung: ETag yếu
+        when(documentService.getDocumentFileById(2)).thenReturn(fileView(null));
+    }
+
+    @Test
+    void returnsWholeFileWithoutRange() throws Exception {
+        mockMvc.perform(get("/api/documents/1/file"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, ETAG))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 1000))
+                .andExpect(content().bytes(content));
+    }
+
+    @Test
+    void returnsSingleRange() throws Exception {
+        mockMvc.perform(get("/api/documents/1/file").header(HttpHeaders.RANGE, "bytes=10-19"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 10-19/1000"))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, 10))
+                .andExpect(content().bytes(Arrays.copyOfRange(content, 10, 20)));
+    }
+
+    @Test
+    void returnsSuffixRange() throws Exception {
+        mockMvc.perform(get("/api/documents/1/file").header(HttpHeaders.RANGE, "bytes=-100"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 900-999/1000"))
+                .andExpect(content().bytes(Arrays.copyOfRange(content, 900, 1000)));
+    }
+
+    @Test
+    void rejectsRangePastEndOfFile() throws Exception {
+        mockMvc.perform(get("/api/documents/1/file").header(HttpHeaders.RANGE, "bytes=1000-1100"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */1000"));
+    }
+
+    @Test
+    void returnsWholeFileForMultipleRanges() throws Exception {
+        mockMvc.perform(get("/api/documents/1/file").header(HttpHeaders.RANGE, "bytes=0-9,20-29"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_RANGE))
+                .andExpect(content().bytes(content));
+    }
+
+    @Test
+    void returnsNotModifiedWhenEtagMatches() throws Exception {
+        mockMvc.perform(get("/api/documents/1/file").header(HttpHeaders.IF_NONE_MATCH, ETAG))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+        // If-None-Match dùng so sánh yếu
+        mockMvc.perform(get("/api/documents/1/file").header(HttpHeaders.IF_NONE_MATCH, "\"other\", W/" + ETAG))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void returnsNotModifiedWhenWeakEtagMatches() throws Exception {
+        String weakEtag = mockMvc.perform(get("/api/documents/2/file"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/api/documents/2/file").header(HttpHeaders.IF_NONE_MATCH, weakEtag))
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/api/documents/2/file").header(HttpHeaders.IF_NONE_MATCH, weakEtag.substring(2)))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void returnsRangeWhenIfRangeMatches() throws Exception {
+        mockMvc.perform(get("/api/documents/1/file")
+                        .header(HttpHeaders.RANGE, "bytes=0-99")
+                        .header(HttpHeaders.IF_RANGE, ETAG))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 0-99/1000"));
+    }
+
+    @Test
+    void returnsWholeFileWhenIfRangeDoesNotMatch() throws Exception {
+        mockMvc.perform(get("/api/documents/1/file")
+                        .header(HttpHeaders.RANGE, "bytes=0-99")
+                        .header(HttpHeaders.IF_RANGE, "\"old\""))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(content));
+        // If-Range dùng so sánh mạnh: ETag yếu không khớp kể cả khi cùng giá trị
+        mockMvc.perform(get("/api/documents/1/file")
+                        .header(HttpHeaders.RANGE, "bytes=0-99")
+                        .header(HttpHeaders.IF_RANGE, "W/" + ETAG))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(content));
+    }
+
+    @Test
+    void returnsWholeFileWhenIfRangeIsWeak() throws Exception {
+        String weakEtag = mockMvc.perform(get("/api/documents/2/file"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/api/documents/2/file")
+                        .header(HttpHeaders.RANGE, "bytes=0-99")
+                        .header(HttpHeaders.IF_RANGE, weakEtag))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_RANGE))
+                .andExpect(content().bytes(content));
+    }
+
+    private static DocumentFileView fileView(String contentHash) {
+        return new DocumentFileView() {
+            @Override
+            public String getFilePath() {
+                return "stored/hop-dong.pdf";
+            }
+
+            @Override
+            public String getFileName() {
+                return "hop-dong.pdf";
+            }
+
+            @Override
+            public String getContentHash() {
+                return contentHash;
+            }
+        };
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.qlkh.Service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTests {
+
+    private final AtomicLong now = new AtomicLong();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // Cửa sổ 4 lời gọi, mở khi lỗi từ 50%, mở 1000 ms, 2 lời gọi thử
+    private final CircuitBreaker breaker = new CircuitBreaker("test", 4, 4, 0.5, 1000, 2, meterRegistry, now::get);
+
+    @Test
+    void opensWhenFailureRateReachesThresholdInWindow() {
+        breaker.tryAcquire().success();
+        breaker.tryAcquire().success();
+        breaker.tryAcquire().failure();
+        // Chưa đủ minimumCalls lời gọi
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(1.0 / 3, breaker.getFailureRate(), 1e-9);
+
+        breaker.tryAcquire().failure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.isOpen());
+        assertNull(breaker.tryAcquire());
+        assertEquals(1, breaker.retryAfterSeconds());
+        assertEquals(1.0, meterRegistry.get("ocr.circuit.calls").tag("outcome", "rejected").counter().count());
+    }
+
+    @Test
+    void slidingWindowForgetsOldFailures() {
+        breaker.tryAcquire().failure();
+        for (int i = 0; i < 4; i++) {
+            breaker.tryAcquire().success();
+        }
+        // Lỗi đầu tiên đã ra khỏi cửa sổ: 1/4 < 50%
+        breaker.tryAcquire().failure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0.25, breaker.getFailureRate(), 1e-9);
+    }
+
+    @Test
+    void halfOpenClosesAfterAllProbesSucceed() {
+        open();
+        now.addAndGet(999);
+        assertNull(breaker.tryAcquire());
+        now.addAndGet(1);
+
+        CircuitBreaker.Call first = breaker.tryAcquire();
+        CircuitBreaker.Call second = breaker.tryAcquire();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertNotNull(first);
+        assertNotNull(second);
+        // Chỉ halfOpenCalls lời gọi thử cùng lúc
+        assertNull(breaker.tryAcquire());
+
+        first.success();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        second.success();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(-1.0, breaker.getFailureRate());
+    }
+
+    @Test
+    void halfOpenReopensOnProbeFailure() {
+        open();
+        now.addAndGet(1000);
+        CircuitBreaker.Call first = breaker.tryAcquire();
+        CircuitBreaker.Call second = breaker.tryAcquire();
+
+        first.failure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        // Lời gọi thử còn lại thuộc lần nửa mở trước, không đóng được mạch
+        second.success();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.isOpen());
+        assertEquals(1, breaker.retryAfterSeconds());
+    }
+
+    @Test
+    void ignoredProbeFreesItsSlot() {
+        open();
+        now.addAndGet(1000);
+        CircuitBreaker.Call first = breaker.tryAcquire();
+        breaker.tryAcquire().success();
+        assertNull(breaker.tryAcquire());
+
+        first.ignore();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.tryAcquire().success();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void lateCompletionsFromPreviousEpochAreOnlyCounted() {
+        CircuitBreaker.Call slow = breaker.tryAcquire();
+        CircuitBreaker.Call slowSuccess = breaker.tryAcquire();
+        open();
+        now.addAndGet(1000);
+        CircuitBreaker.Call probe = breaker.tryAcquire();
+
+        // Lời gọi bắt đầu khi mạch còn đóng kết thúc trong lúc nửa mở: không mở lại, không chiếm chỗ thử
+        slow.failure();
+        slowSuccess.success();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertNotNull(breaker.tryAcquire());
+        probe.success();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        assertEquals(5.0, meterRegistry.get("ocr.circuit.calls").tag("outcome", "failure").counter().count());
+        assertEquals(2.0, meterRegistry.get("ocr.circuit.calls").tag("outcome", "success").counter().count());
+    }
+
+    @Test
+    void callReportsOnlyOnce() {
+        CircuitBreaker.Call call = breaker.tryAcquire();
+        call.failure();
+        call.failure();
+        call.success();
+        assertEquals(1.0, breaker.getFailureRate());
+        assertFalse(breaker.isOpen());
+        assertEquals(1.0, meterRegistry.get("ocr.circuit.calls").tag("outcome", "failure").counter().count());
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            breaker.tryAcquire().failure();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
@@ -0,0 +1,337 @@
+package com.example.qlkh.Service;
+
+import com.example.qlkh.Entity.IngestionJob;
+import com.example.qlkh.Entity.IngestionJobFile;
+import com.example.qlkh.Repository.DocumentRepository;
+import com.example.qlkh.Repository.IngestionJobFileRepository;
+import com.example.qlkh.Repository.IngestionJobRepository;
+import com.example.qlkh.Service.Impl.DocumentServiceImpl;
+import com.example.qlkh.dto.IngestionJobDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+/**
+ * Chạy trên H2 (chế độ MariaDB); OCR service và chỉ mục so sánh được thay bằng mock.
+ * Công việc chạy trên worker thật như khi chạy ứng dụng; test không chạy trong transaction để thấy dữ liệu đã commit.
+ * OPTIMIZE_REUSE_RESULTS=FALSE: H2 không dùng lại kết quả truy vấn cũ khi transaction của luồng khác commit sau đó.
+ */
+@DataJpaTest(showSql = false, properties = {
+        "spring.datasource.url=jdbc:h2:mem:ingestion;MODE=MariaDB;DB_CLOSE_DELAY=-1;OPTIMIZE_REUSE_RESULTS=FALSE",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "logging.level.org.hibernate.type.descriptor.sql.BasicBinder=INFO",
+        "ingestion.poll-interval-ms=3600000"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({DocumentIngestionService.class, DocumentServiceImpl.class, FileStorageService.class,
+        DocumentIngestionServiceTests.Config.class})
+class DocumentIngestionServiceTests {
+
+    @TempDir
+    static Path uploadDir;
+
+    @DynamicPropertySource
+    static void uploadDir(DynamicPropertyRegistry registry) {
+        registry.add("file.upload.dir", uploadDir::toString);
+    }
+
+    @TestConfiguration
+    static class Config {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        CircuitBreaker ocrCircuitBreaker(MeterRegistry meterRegistry) {
+            return new CircuitBreaker("ocr", 20, 10, 0.5, 10000, 2, meterRegistry);
+        }
+    }
+
+    @MockBean
+    private OcrClient ocrClient;
+
+    @MockBean
+    private OcrResultCache ocrResultCache;
+
+    @MockBean
+    private DocumentSimilarityService documentSimilarityService;
+
+    @SpyBean
+    private FileStorageService fileStorage;
+
+    @Autowired
+    private DocumentIngestionService ingestionService;
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Autowired
+    private DocumentRepository documentRepository;
+
+    @Autowired
+    private IngestionJobRepository jobRepository;
+
+    @Autowired
+    private IngestionJobFileRepository fileRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void ocrReturnsText() {
+        // Mỗi file một lô, OCR trả về cùng một văn bản
+        when(ocrClient.planBatches(any())).thenAnswer(invocation -> IntStream
+                .range(0, invocation.<long[]>getArgument(0).length)
+                .mapToObj(List::of)
+                .toList());
+        when(ocrClient.recognizeAsync(any())).thenAnswer(invocation -> CompletableFuture.completedFuture(
+                List.of(new OcrClient.OcrResult(List.of(Map.of("text", "văn bản"))))));
+    }
+
+    @AfterEach
+    void cleanUp() {
+        fileRepository.deleteAll();
+        jobRepository.deleteAll();
+        documentRepository.deleteAll();
+    }
+
+    @Test
+    void concurrentJobsWithSameContentCreateOneDocument() throws Exception {
+        byte[] content = "cùng một nội dung".getBytes(StandardCharsets.UTF_8);
+        // Cả hai công việc đều đã kiểm tra hash (chưa có tài liệu nào) trước khi một trong hai lưu tài liệu
+        CyclicBarrier bothChecked = new CyclicBarrier(2);
+        doAnswer(invocation -> {
+            bothChecked.await(5, TimeUnit.SECONDS);
+            return invocation.callRealMethod();
+        }).when(fileStorage).store(any(), any());
+
+        IngestionJobDTO first = enqueue("a.txt", content);
+        IngestionJobDTO second = enqueue("b.txt", content);
+        List<IngestionJobDTO.FileStatus> files = List.of(
+                awaitFinished(first.getId()).getFiles().get(0), awaitFinished(second.getId()).getFiles().get(0));
+
+        assertEquals(1, documentRepository.count());
+        assertTrue(files.stream().allMatch(file -> file.getStatus().equals("DONE")));
+        assertEquals(files.get(0).getDocumentId(), files.get(1).getDocumentId());
+        assertEquals(1, files.stream().filter(IngestionJobDTO.FileStatus::isDeduplicated).count());
+    }
+
+    @Test
+    void deletingDocumentKeepsFileStoredByAnotherJob() throws Exception {
+        byte[] content = "nội dung dùng lại".getBytes(StandardCharsets.UTF_8);
+        Integer deleted = awaitFinished(enqueue("a.txt", content).getId()).getFiles().get(0).getDocumentId();
+        String filePath = documentRepository.findById(deleted).orElseThrow().getFilePath();
+
+        // Tài liệu bị xóa đã commit, file chưa bị xóa: công việc khác lưu lại cùng nội dung vào đúng lúc này
+        CountDownLatch deleteCommitted = new CountDownLatch(1);
+        CountDownLatch stored = new CountDownLatch(1);
+        CountDownLatch cleanedUp = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            deleteCommitted.countDown();
+            stored.await(5, TimeUnit.SECONDS);
+            invocation.callRealMethod();
+            cleanedUp.countDown();
+            return null;
+        }).when(fileStorage).deleteUnlessUsed(any(), any());
+        doAnswer(invocation -> {
+            Object key = invocation.callRealMethod();
+            stored.countDown();
+            // Tài liệu mới chưa commit thêm một lúc
+            Thread.sleep(200);
+            return key;
+        }).when(fileStorage).store(any(), any());
+
+        assertTrue(documentService.deleteDocument(deleted));
+        assertTrue(deleteCommitted.await(5, TimeUnit.SECONDS));
+        IngestionJobDTO.FileStatus reused = awaitFinished(enqueue("b.txt", content).getId()).getFiles().get(0);
+        assertTrue(cleanedUp.await(5, TimeUnit.SECONDS));
+
+        // Tài liệu mới được lưu khi file còn đó: việc xóa chờ tới khi nó commit rồi thấy nó vẫn dùng file
+        assertEquals("DONE", reused.getStatus());
+        assertEquals(filePath, documentRepository.findById(reused.getDocumentId()).orElseThrow().getFilePath());
+        assertNotNull(fileStorage.resolve(filePath));
+    }
+
+    @Test
+    void deletingLastDocumentRemovesItsFileAfterCommit() throws Exception {
+        Integer documentId = awaitFinished(enqueue("a.txt", "chỉ một".getBytes(StandardCharsets.UTF_8)).getId())
+                .getFiles().get(0).getDocumentId();
+        String filePath = documentRepository.findById(documentId).orElseThrow().getFilePath();
+        assertNotNull(fileStorage.resolve(filePath));
+
+        CountDownLatch cleanedUp = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            invocation.callRealMethod();
+            cleanedUp.countDown();
+            return null;
+        }).when(fileStorage).deleteUnlessUsed(any(), any());
+
+        assertTrue(documentService.deleteDocument(documentId));
+        assertTrue(cleanedUp.await(5, TimeUnit.SECONDS));
+        assertNull(fileStorage.resolve(filePath));
+    }
+
+    @Test
+    void claimsQueuedJobOnce() {
+        IngestionJob job = saveJob(IngestionJob.Status.QUEUED);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+        assertEquals(1, (int) transaction.execute(status -> jobRepository.claim(
+                job.getId(), IngestionJob.Status.QUEUED, IngestionJob.Status.RUNNING, LocalDateTime.now())));
+        // Lần lấy thứ hai (dispatch khác hoặc instance khác) không lấy được công việc đã chạy
+        assertEquals(0, (int) transaction.execute(status -> jobRepository.claim(
+                job.getId(), IngestionJob.Status.QUEUED, IngestionJob.Status.RUNNING, LocalDateTime.now())));
+        IngestionJob claimed = jobRepository.findById(job.getId()).orElseThrow();
+        assertEquals(IngestionJob.Status.RUNNING, claimed.getStatus());
+        assertNotNull(claimed.getStartedAt());
+    }
+
+    @Test
+    void startRequeuesInterruptedJobs() throws Exception {
+        // Ứng dụng dừng khi công việc đang chạy: công việc RUNNING, file PROCESSING
+        IngestionJob job = saveJob(IngestionJob.Status.RUNNING);
+        saveFile(job, IngestionJobFile.Status.PROCESSING, "dở dang");
+
+        ingestionService.start();
+        IngestionJobDTO finished = awaitFinished(job.getId());
+
+        assertEquals("COMPLETED", finished.getStatus());
+        assertEquals("DONE", finished.getFiles().get(0).getStatus());
+        assertEquals(2, finished.getFiles().get(0).getAttempts());
+        assertEquals(1, documentRepository.count());
+    }
+
+    @Test
+    void failedFileDoesNotStopOtherFilesAndCanBeRetried() throws Exception {
+        AtomicBoolean ocrFails = new AtomicBoolean(true);
+        doAnswer(invocation -> {
+            List<FileSystemResource> files = invocation.getArgument(0);
+            String content = Files.readString(files.get(0).getFile().toPath());
+            if (ocrFails.get() && content.equals("hỏng")) {
+                return CompletableFuture.failedFuture(new IllegalStateException("OCR service returned 500"));
+            }
+            return CompletableFuture.completedFuture(List.of(new OcrClient.OcrResult(List.of(Map.of("text", content)))));
+        }).when(ocrClient).recognizeAsync(any());
+        IngestionJobDTO job = ingestionService.enqueue(List.of(
+                new MockMultipartFile("files", "a.txt", "text/plain", "hỏng".getBytes(StandardCharsets.UTF_8)),
+                new MockMultipartFile("files", "b.txt", "text/plain", "đọc được".getBytes(StandardCharsets.UTF_8))),
+                List.of()).orElseThrow();
+
+        IngestionJobDTO finished = awaitFinished(job.getId());
+        assertEquals("COMPLETED", finished.getStatus());
+        assertEquals(1, finished.getFailedFiles());
+        assertEquals("FAILED", finished.getFiles().get(0).getStatus());
+        assertEquals("OCR service returned 500", finished.getFiles().get(0).getError());
+        assertEquals("DONE", finished.getFiles().get(1).getStatus());
+        assertEquals(1, documentRepository.count());
+
+        // OCR service hoạt động lại: chỉ file lỗi được xử lý lại
+        ocrFails.set(false);
+        assertEquals("QUEUED", ingestionService.retry(job.getId()).orElseThrow().getStatus());
+        IngestionJobDTO retried = awaitFinished(job.getId());
+        assertEquals("COMPLETED", retried.getStatus());
+        assertTrue(retried.getFiles().stream().allMatch(file -> file.getStatus().equals("DONE")));
+        assertEquals(2, retried.getFiles().get(0).getAttempts());
+        assertEquals(1, retried.getFiles().get(1).getAttempts());
+        assertEquals(2, documentRepository.count());
+    }
+
+    @Test
+    void retryOnlyAcceptsFinishedJobsWithFailedFiles() throws Exception {
+        assertTrue(ingestionService.retry(Long.MAX_VALUE).isEmpty());
+
+        IngestionJob running = saveJob(IngestionJob.Status.RUNNING);
+        IllegalStateException stillRunning = assertThrows(IllegalStateException.class,
+                () -> ingestionService.retry(running.getId()));
+        assertEquals("Ingestion job " + running.getId() + " is still RUNNING", stillRunning.getMessage());
+
+        Long completed = awaitFinished(enqueue("a.txt", "xong".getBytes(StandardCharsets.UTF_8)).getId()).getId();
+        IllegalStateException noFailedFiles = assertThrows(IllegalStateException.class,
+                () -> ingestionService.retry(completed));
+        assertEquals("Ingestion job " + completed + " has no failed files", noFailedFiles.getMessage());
+        assertEquals(IngestionJob.Status.COMPLETED, jobRepository.findById(completed).orElseThrow().getStatus());
+    }
+
+    private IngestionJobDTO enqueue(String fileName, byte[] content) throws Exception {
+        return ingestionService.enqueue(
+                List.of(new MockMultipartFile("files", fileName, "text/plain", content)), List.of()).orElseThrow();
+    }
+
+    private IngestionJobDTO awaitFinished(Long jobId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (true) {
+            IngestionJobDTO job = ingestionService.getJob(jobId).orElseThrow();
+            if (job.getStatus().equals("COMPLETED") || job.getStatus().equals("FAILED")) {
+                return job;
+            }
+            assertTrue(System.currentTimeMillis() < deadline, "Ingestion job " + jobId + " is still " + job.getStatus());
+            Thread.sleep(20);
+        }
+    }
+
+    private IngestionJob saveJob(IngestionJob.Status status) {
+        IngestionJob job = new IngestionJob();
+        job.setStatus(status);
+        job.setAuthorIds("");
+        return jobRepository.save(job);
+    }
+
+    // File đã được lưu vào thư mục tạm như khi tải lên
+    private IngestionJobFile saveFile(IngestionJob job, IngestionJobFile.Status status, String content) throws Exception {
+        Path staged = Files.createDirectories(uploadDir.resolve("ingest")).resolve(UUID.randomUUID() + ".txt");
+        Files.writeString(staged, content);
+        IngestionJobFile file = new IngestionJobFile();
+        file.setJobId(job.getId());
+        file.setPosition(0);
+        file.setFileName("a.txt");
+        file.setStoredPath(staged.toString());
+        file.setFileSize(Files.size(staged));
+        file.setStatus(status);
+        file.setAttempts(status == IngestionJobFile.Status.PROCESSING ? 1 : 0);
+        return fileRepository.save(file);
+    }
+}
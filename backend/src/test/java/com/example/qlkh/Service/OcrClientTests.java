@@ -0,0 +1,178 @@
+package com.example.qlkh.Service;
+
+import com.example.qlkh.Exception.OcrServiceException;
+import com.example.qlkh.OcrConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OcrClientTests {
+
+    private static final String RESULT = "{\"results\":[]}";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final CountDownLatch releaseSlow = new CountDownLatch(1);
+    private HttpServer server;
+    private PoolingAsyncClientConnectionManager connectionManager;
+    private CloseableHttpAsyncClient httpClient;
+    private ExecutorService ioExecutor;
+    private OcrEndpointPool endpointPool;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        connectionManager = PoolingAsyncClientConnectionManagerBuilder.create().build();
+        httpClient = new OcrConfig().ocrAsyncHttpClient(connectionManager, 1, 10000, 10000);
+        ioExecutor = Executors.newFixedThreadPool(2);
+    }
+
+    @AfterEach
+    void stopServer() throws IOException {
+        releaseSlow.countDown();
+        httpClient.close();
+        ioExecutor.shutdownNow();
+        server.stop(0);
+    }
+
+    @Test
+    void retriesTransientErrorOnAnotherEndpoint() throws Exception {
+        AtomicInteger failing = respond("/a", exchange -> reply(exchange, 503, ""));
+        AtomicInteger healthy = respond("/b", exchange -> reply(exchange, 200, RESULT));
+        OcrClient client = client(false, url("/a"), url("/b"));
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Map.of("results", List.of()), client.compareAsync(Map.of("text", "x")).get(5, TimeUnit.SECONDS));
+        }
+        // Lần gọi lại không chọn lại endpoint vừa lỗi
+        assertEquals(10, healthy.get());
+        assertEquals(failing.get(), (int) meterRegistry.get("ocr.client.retries").counter().count());
+    }
+
+    @Test
+    void doesNotRetryClientErrors() {
+        AtomicInteger requests = respond("/a", exchange -> reply(exchange, 400, ""));
+        OcrClient client = client(false, url("/a"));
+
+        ExecutionException error = assertThrows(ExecutionException.class,
+                () -> client.compareAsync(Map.of("text", "x")).get(5, TimeUnit.SECONDS));
+        assertEquals(400, assertInstanceOf(OcrServiceException.class, error.getCause()).getStatusCode());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void losingHedgedRequestIsAborted() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        respond("/a", exchange -> {
+            // Request tới trước treo tới khi test kết thúc, request tới sau trả về ngay
+            if (requests.incrementAndGet() == 1) {
+                releaseSlow.await(30, TimeUnit.SECONDS);
+            }
+            reply(exchange, 200, RESULT);
+        });
+        OcrClient client = client(true, url("/a"));
+
+        assertEquals(Map.of("results", List.of()), client.compareAsync(Map.of("text", "x")).get(5, TimeUnit.SECONDS));
+        assertEquals(2, requests.get());
+        assertEquals(1.0, meterRegistry.get("ocr.compare.hedges").tag("outcome", "sent").counter().count());
+
+        // Request chậm bị hủy: kết nối bị đóng, endpoint không còn request đang chạy.
+        // Việc đóng kết nối chạy trên luồng I/O nên chờ một chút
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((connectionManager.getTotalStats().getLeased() > 0 || endpointPool.getEndpoints().get(0).getOutstanding() > 0)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, connectionManager.getTotalStats().getLeased());
+        assertEquals(0, endpointPool.getEndpoints().get(0).getOutstanding());
+        assertTrue(releaseSlow.getCount() > 0);
+    }
+
+    private OcrClient client(boolean hedge, String... urls) {
+        endpointPool = new OcrEndpointPool(meterRegistry);
+        ReflectionTestUtils.setField(endpointPool, "serviceUrl", urls[0]);
+        ReflectionTestUtils.setField(endpointPool, "serviceUrls", String.join(",", urls));
+        ReflectionTestUtils.setField(endpointPool, "endpointsFile", "");
+        ReflectionTestUtils.setField(endpointPool, "strategy", "p2c");
+        ReflectionTestUtils.setField(endpointPool, "ejectAfterFailures", 100);
+        ReflectionTestUtils.setField(endpointPool, "ejectMs", 30000L);
+        endpointPool.init();
+
+        OcrClient client = new OcrClient(httpClient, ioExecutor,
+                new CircuitBreaker("ocr", 20, 20, 0.5, 10000, 2, meterRegistry),
+                new CircuitBreaker("compare", 20, 20, 0.5, 10000, 2, meterRegistry),
+                endpointPool, meterRegistry);
+        ReflectionTestUtils.setField(client, "deadlineMs", 10000L);
+        ReflectionTestUtils.setField(client, "retryMaxAttempts", 2);
+        ReflectionTestUtils.setField(client, "retryBaseDelayMs", 1L);
+        ReflectionTestUtils.setField(client, "retryMaxDelayMs", 1L);
+        ReflectionTestUtils.setField(client, "compressionEnabled", false);
+        ReflectionTestUtils.setField(client, "compressionMinBytes", 8192);
+        ReflectionTestUtils.setField(client, "compareFormat", "json");
+        ReflectionTestUtils.setField(client, "hedgeEnabled", hedge);
+        ReflectionTestUtils.setField(client, "hedgeDefaultDelayMs", 100L);
+        ReflectionTestUtils.setField(client, "hedgeMinDelayMs", 50L);
+        return client;
+    }
+
+    private String url(String prefix) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + prefix + "/ocr";
+    }
+
+    private AtomicInteger respond(String prefix, Handler handler) {
+        AtomicInteger requests = new AtomicInteger();
+        server.createContext(prefix + "/ocr/compare", exchange -> {
+            requests.incrementAndGet();
+            exchange.getRequestBody().readAllBytes();
+            try {
+                handler.handle(exchange);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // Client đã hủy request
+            } finally {
+                exchange.close();
+            }
+        });
+        return requests;
+    }
+
+    private static void reply(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private interface Handler {
+        void handle(HttpExchange exchange) throws IOException, InterruptedException;
+    }
+}
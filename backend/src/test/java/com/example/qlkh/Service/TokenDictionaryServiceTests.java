@@ -0,0 +1,118 @@
+package com.example.qlkh.Service;
+
+import com.example.qlkh.Repository.TokenDictionaryRepository;
+import com.example.qlkh.Similarity.TokenDictionary;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Chạy trên H2 (chế độ MariaDB); pool chỉ có một kết nối để lần ghi từ mới lồng trong transaction khác bị lộ ra.
+ */
+@DataJpaTest(showSql = false, properties = {
+        "spring.datasource.url=jdbc:h2:mem:dictionary;MODE=MariaDB;DB_CLOSE_DELAY=-1",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.datasource.hikari.maximum-pool-size=1",
+        "spring.datasource.hikari.connection-timeout=2000"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({TokenDictionaryService.class, TokenDictionaryServiceTests.Config.class})
+class TokenDictionaryServiceTests {
+
+    @TestConfiguration
+    static class Config {
+        @Bean
+        TokenDictionary tokenDictionary() {
+            return new TokenDictionary();
+        }
+    }
+
+    @Autowired
+    private TokenDictionaryService dictionaryService;
+
+    @Autowired
+    private TokenDictionaryRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void loadEmptyDictionary() {
+        dictionaryService.load();
+    }
+
+    @AfterEach
+    void cleanUp() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void concurrentCallersGetTheSameIdForANewToken() throws Exception {
+        CyclicBarrier bothStarted = new CyclicBarrier(2);
+        CompletableFuture<int[]> first = CompletableFuture.supplyAsync(() -> {
+            await(bothStarted);
+            return dictionaryService.intern(new long[]{1, 2}, () -> List.of("một", "hai"));
+        });
+        CompletableFuture<int[]> second = CompletableFuture.supplyAsync(() -> {
+            await(bothStarted);
+            return dictionaryService.intern(new long[]{2, 3}, () -> List.of("hai", "ba"));
+        });
+
+        int[] firstIds = first.get(5, TimeUnit.SECONDS);
+        int[] secondIds = second.get(5, TimeUnit.SECONDS);
+        assertEquals(firstIds[1], secondIds[0]);
+        assertEquals(3, repository.count());
+        // Từ điển nạp lại từ DB cho cùng id
+        dictionaryService.load();
+        assertArrayEquals(new int[]{firstIds[0], firstIds[1], secondIds[1]},
+                dictionaryService.intern(new long[]{1, 2, 3}, List::of));
+    }
+
+    @Test
+    void knownTokensAreLookedUpInsideTransaction() {
+        int[] ids = dictionaryService.intern(new long[]{1, 2}, () -> List.of("một", "hai"));
+
+        int[] inTransaction = new TransactionTemplate(transactionManager).execute(status -> {
+            // Chiếm kết nối duy nhất của pool như transaction lưu tài liệu
+            repository.count();
+            return dictionaryService.intern(new long[]{2, 1}, List::of);
+        });
+        assertArrayEquals(new int[]{ids[1], ids[0]}, inTransaction);
+    }
+
+    @Test
+    void newTokensAreRejectedInsideTransaction() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        assertThrows(IllegalStateException.class, () -> transaction.executeWithoutResult(status ->
+                dictionaryService.intern(new long[]{1}, () -> List.of("một"))));
+        assertEquals(0, repository.count());
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await(5, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.qlkh.Similarity;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * So sánh tìm đoạn trùng lặp giữa bản port SequenceMatcher (hành vi hiện tại của find_common_text)
+ * và CommonPassageFinder trên văn bản hợp đồng: truy vấn là một trang OCR ~400 từ có nhiễu,
+ * tài liệu là hợp đồng docWords từ.
+ * Chạy: mvn -q test-compile exec:java -Dexec.classpathScope=test
+ *       -Dexec.mainClass=com.example.qlkh.Similarity.CommonPassageBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommonPassageBenchmark {
+
+    private static final String[] CLAUSES = {
+            "Điều {n}. Bên A có trách nhiệm giao hàng đúng số lượng, chủng loại và chất lượng như đã thỏa thuận tại Phụ lục {n} của hợp đồng này.",
+            "Bên B thanh toán cho Bên A bằng hình thức chuyển khoản trong vòng {n} ngày kể từ ngày nhận đủ hóa đơn giá trị gia tăng hợp lệ.",
+            "Trường hợp một trong hai bên vi phạm nghĩa vụ, bên vi phạm phải chịu phạt {n}% giá trị phần nghĩa vụ bị vi phạm.",
+            "Mọi tranh chấp phát sinh từ hợp đồng này trước hết được giải quyết bằng thương lượng, hòa giải giữa các bên.",
+            "Hợp đồng có hiệu lực kể từ ngày ký và được lập thành {n} bản có giá trị pháp lý như nhau, mỗi bên giữ hai bản.",
+            "Công ty TNHH Thương mại và Dịch vụ Vận tải Số {n}, địa chỉ trụ sở tại Quận {n}, Thành phố Hồ Chí Minh.",
+            "Bên A cam kết bảo hành sản phẩm trong thời hạn {n} tháng, chi phí sửa chữa do Bên A chịu toàn bộ.",
+            "Các bên có nghĩa vụ bảo mật thông tin liên quan đến hợp đồng, không được tiết lộ cho bên thứ ba khi chưa có sự đồng ý bằng văn bản."
+    };
+
+    @Param({"1000", "5000", "20000"})
+    public int docWords;
+
+    private int[] query;
+    private int[] document;
+    private CommonPassageFinder finder;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        List<String> docText = contractWords(random, docWords);
+
+        // Trang OCR: một đoạn 400 từ của hợp đồng, 5% từ bị nhận dạng sai
+        int start = random.nextInt(Math.max(1, docText.size() - 400));
+        List<String> queryText = new ArrayList<>(docText.subList(start, Math.min(docText.size(), start + 400)));
+        for (int i = 0; i < queryText.size(); i++) {
+            if (random.nextInt(100) < 5) {
+                queryText.set(i, "ocr" + random.nextInt(1000));
+            }
+        }
+
+        Map<String, Integer> ids = new HashMap<>();
+        query = encode(queryText, ids);
+        document = encode(docText, ids);
+        finder = new CommonPassageFinder(TextSimilarity.COMMON_TEXT_THRESHOLD);
+    }
+
+    @Benchmark
+    public void difflibMatchingBlocks(Blackhole blackhole) {
+        blackhole.consume(new SequenceMatcher(query, document).getMatchingBlocks());
+    }
+
+    @Benchmark
+    public void seedAndExtend(Blackhole blackhole) {
+        blackhole.consume(finder.find(query, document));
+    }
+
+    private static List<String> contractWords(Random random, int count) {
+        List<String> words = new ArrayList<>(count);
+        while (words.size() < count) {
+            String clause = CLAUSES[random.nextInt(CLAUSES.length)].replace("{n}", String.valueOf(random.nextInt(60) + 1));
+            words.addAll(TextSimilarity.preprocessWords(clause));
+        }
+        return words.subList(0, count);
+    }
+
+    private static int[] encode(List<String> words, Map<String, Integer> ids) {
+        int[] encoded = new int[words.size()];
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = ids.computeIfAbsent(words.get(i), w -> ids.size());
+        }
+        return encoded;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CommonPassageBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.qlkh.Similarity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CommonPassageFinderTests {
+
+    private final CommonPassageFinder finder = new CommonPassageFinder(3);
+
+    @Test
+    void findsSameBlocksAsSequenceMatcherForInOrderText() {
+        int[] a = {1, 2, 3, 4, 9, 5, 6, 7, 8, 10, 11};
+        int[] b = {0, 1, 2, 3, 4, 5, 6, 7, 8, 12, 10, 11};
+
+        assertEquals(2, finder.find(a, b));
+        assertBlock(0, 0, 1, 4);
+        assertBlock(1, 5, 5, 4);
+
+        // SequenceMatcher cho cùng các khối đủ 3 token (khối "10 11" bị bỏ vì ngắn hơn ngưỡng)
+        List<int[]> expected = new ArrayList<>();
+        for (int[] block : new SequenceMatcher(a, b).getMatchingBlocks()) {
+            if (block[2] >= 3) {
+                expected.add(block);
+            }
+        }
+        assertEquals(2, expected.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertBlock(i, expected.get(i)[0], expected.get(i)[1], expected.get(i)[2]);
+        }
+    }
+
+    @Test
+    void findsReorderedPassages() {
+        int[] a = {20, 21, 22, 23, 10, 11, 12};
+        int[] b = {10, 11, 12, 99, 20, 21, 22, 23};
+
+        assertEquals(2, finder.find(a, b));
+        assertBlock(0, 0, 4, 4);
+        assertBlock(1, 4, 0, 3);
+    }
+
+    @Test
+    void ignoresShortRunsAndUnknownTokens() {
+        int[] a = {1, 2, -1, -1, -1, 3, 4};
+        int[] b = {1, 2, 5, -1, -1, -1, 3, 4};
+
+        assertEquals(0, finder.find(a, b));
+        assertEquals(0, finder.find(new int[]{1, 2}, b));
+    }
+
+    private void assertBlock(int block, int queryStart, int docStart, int length) {
+        assertEquals(queryStart, finder.queryStart(block));
+        assertEquals(docStart, finder.docStart(block));
+        assertEquals(length, finder.length(block));
+    }
+}
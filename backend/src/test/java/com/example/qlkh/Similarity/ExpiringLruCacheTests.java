@@ -0,0 +1,47 @@
+package com.example.qlkh.Similarity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ExpiringLruCacheTests {
+
+    private final AtomicLong now = new AtomicLong();
+    private final ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(2, 1000, now::get);
+
+    @Test
+    void evictsLeastRecentlyUsedWhenFull() {
+        cache.put("a", "1");
+        cache.put("b", "2");
+        assertEquals("1", cache.get("a"));
+        cache.put("c", "3");
+
+        assertNull(cache.get("b"));
+        assertEquals("1", cache.get("a"));
+        assertEquals("3", cache.get("c"));
+        assertEquals(1, cache.sizeEvictions());
+        assertEquals(3, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    void expiresEntriesAfterTtl() {
+        cache.put("a", "1");
+        now.addAndGet(999_000_000L);
+        assertEquals("1", cache.get("a"));
+        cache.put("b", "2");
+
+        now.addAndGet(1_000_000L);
+        assertNull(cache.get("a"));
+        // Hết hạn được dọn trước khi bỏ phần tử còn hạn
+        cache.put("c", "3");
+        cache.put("d", "4");
+        assertNull(cache.get("b"));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.sizeEvictions());
+        assertEquals(1, cache.expirations());
+    }
+}
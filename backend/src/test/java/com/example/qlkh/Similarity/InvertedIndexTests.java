@@ -0,0 +1,62 @@
+package com.example.qlkh.Similarity;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class InvertedIndexTests {
+
+    // Mảng slot ban đầu: 16384 tham chiếu
+    private static final long EMPTY = 16 + 16384 * 4;
+
+    @Test
+    void findsDocumentsSharingAWord() {
+        InvertedIndex index = new InvertedIndex();
+        index.add(1, new int[]{3, 5});
+        index.add(2, new int[]{5, 7});
+        index.add(3, new int[]{9});
+
+        assertArrayEquals(new int[]{1, 2}, index.candidates(new int[]{5, -1}));
+        index.remove(1);
+        assertArrayEquals(new int[]{2}, index.candidates(new int[]{3, 5}));
+        assertEquals(3, index.tokenCount());
+    }
+
+    @Test
+    void tracksEstimatedBytesOnAddAndRemove() {
+        InvertedIndex index = new InvertedIndex();
+        assertEquals(EMPTY, index.estimatedBytes());
+
+        index.add(1, new int[]{3, 5});
+        long afterFirst = EMPTY + 2 * list(2) + slots(2);
+        assertEquals(afterFirst, index.estimatedBytes());
+
+        // Danh sách của từ 5 còn chỗ cho tài liệu thứ hai, tài liệu thứ ba làm danh sách tăng từ 2 lên 4 phần tử
+        index.add(2, new int[]{5});
+        index.add(3, new int[]{5});
+        assertEquals(afterFirst + 2 * slots(1) + 2 * Integer.BYTES, index.estimatedBytes());
+
+        // Cập nhật tài liệu: phần ánh xạ cũ được trả lại, danh sách không thu nhỏ
+        index.add(3, new int[]{5});
+        assertEquals(afterFirst + 2 * slots(1) + 2 * Integer.BYTES, index.estimatedBytes());
+        index.remove(2);
+        assertEquals(afterFirst + slots(1) + 2 * Integer.BYTES, index.estimatedBytes());
+
+        // Id từ vượt quá mảng slot: mảng tăng gấp đôi
+        index.add(4, new int[]{20000});
+        assertEquals(afterFirst + 2 * slots(1) + 2 * Integer.BYTES + 16384 * 4 + list(2),
+                index.estimatedBytes());
+
+        index.clear();
+        assertEquals(16 + 32768 * 4, index.estimatedBytes());
+    }
+
+    private static long list(int capacity) {
+        return 16 + 16 + capacity * 4L;
+    }
+
+    private static long slots(int length) {
+        return 48 + 16 + length * 4L;
+    }
+}
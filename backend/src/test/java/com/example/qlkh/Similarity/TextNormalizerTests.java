@@ -0,0 +1,54 @@
+package com.example.qlkh.Similarity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TextNormalizerTests {
+
+    @Test
+    void defaultMatchesPythonPreprocessText() {
+        // preprocess_text("Hợp đồng số 12/2024, BÊN A: Công-ty ﬁ İSTANBUL Σ").split()
+        assertEquals(List.of("hợp", "đồng", "số", "122024", "bên", "a", "côngty", "fi", "i̇stanbul", "σ"),
+                TextNormalizer.PYTHON_COMPATIBLE.words("Hợp đồng số 12/2024, BÊN A: Công-ty ﬁ İSTANBUL Σ"));
+        // Final_Sigma của CPython dừng ở chữ số, khác String.toLowerCase của Java
+        assertEquals(List.of("aς7b", "ὀδυσσεύς"), TextNormalizer.PYTHON_COMPATIBLE.words("AΣ7B ὈΔΥΣΣΕΎΣ"));
+        assertTrue(TextNormalizer.PYTHON_COMPATIBLE.words(" ,.; ").isEmpty());
+        assertEquals(0, TextNormalizer.PYTHON_COMPATIBLE.signature());
+    }
+
+    @Test
+    void hashesMatchWordHashes() {
+        String text = "Điều 5. Bên B thanh toán trong vòng 30 ngày";
+        assertArrayEquals(Fingerprints.wordHashes(TextNormalizer.PYTHON_COMPATIBLE.words(text)),
+                TextNormalizer.PYTHON_COMPATIBLE.hashes(text));
+    }
+
+    @Test
+    void foldsDiacriticsAndMapsConfusables() {
+        TextNormalizer normalizer = new TextNormalizer(true, true, List.of());
+        // "Hợp đồng" có chữ о Cyrillic và số 0 bị OCR nhận nhầm; số thuần giữ nguyên
+        assertEquals(List.of("hop", "dong", "so", "2050", "thuong", "mai"),
+                normalizer.words("Hợp đồng số 2050 thương mại".replace("đồng", "đ0ng").replace("Hợp", "Hợр")));
+        assertTrue(normalizer.signature() > 0);
+    }
+
+    @Test
+    void removesNormalizedStopWords() {
+        TextNormalizer normalizer = new TextNormalizer(true, false, List.of("Và", "của"));
+        assertEquals(List.of("ben", "a", "ben", "b"), normalizer.words("Bên A và bên B của"));
+    }
+
+    @Test
+    void tokenIdsComeFromSharedDictionary() {
+        TokenDictionary dictionary = new TokenDictionary();
+        TextNormalizer normalizer = TextNormalizer.PYTHON_COMPATIBLE;
+        dictionary.put(TokenHash.hash64("bên"), 0);
+        dictionary.put(TokenHash.hash64("b"), 1);
+        assertArrayEquals(new int[]{1, 0, -1}, normalizer.tokenIds("B, BÊN c", dictionary));
+    }
+}
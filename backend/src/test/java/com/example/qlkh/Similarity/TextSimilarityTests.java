@@ -0,0 +1,62 @@
+package com.example.qlkh.Similarity;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * So với kết quả của calculate_similarity / find_common_text (python-service, difflib của Python 3.11)
+ * trên cùng văn bản.
+ */
+class TextSimilarityTests {
+
+    private static final String CONTRACT =
+            "điều khoản chung ".repeat(60) + "bên mua thanh toán đủ tiền trong ba mươi ngày " + "điều khoản chung ".repeat(40);
+
+    @Test
+    void matchesPythonForReorderedPassages() {
+        assertSameAsPython(
+                "Hợp đồng mua bán nhà ở, được ký ngày 12/3 giữa bên A và bên B; giá bán là 2 tỷ đồng.",
+                "Giá bán là 2 tỷ đồng. Hợp đồng mua bán nhà ở được ký giữa bên A và bên B, có hiệu lực ngay.",
+                0.7391304347826086,
+                List.of("hợp đồng mua bán nhà ở được ký", "giữa bên a và bên b"));
+    }
+
+    @Test
+    void matchesPythonWhenMatchExtendsOverPopularWords() {
+        // Tài liệu từ 200 từ: "điều", "khoản", "chung" là phần tử "popular" nhưng khối khớp vẫn mở rộng qua chúng
+        assertSameAsPython(
+                "điều khoản chung điều khoản chung bên mua thanh toán đủ tiền trong ba mươi ngày điều khoản chung",
+                CONTRACT,
+                1.0,
+                List.of("điều khoản chung điều khoản chung bên mua thanh toán đủ tiền trong ba mươi ngày điều khoản chung"));
+    }
+
+    @Test
+    void matchesPythonWhenOnlyPopularWordsAreShared() {
+        // difflib không lấy phần tử "popular" làm điểm bắt đầu khối khớp nên không có đoạn chung nào
+        assertSameAsPython(
+                "các bên thống nhất điều khoản chung như sau",
+                CONTRACT,
+                0.2222222222222222,
+                List.of());
+    }
+
+    private static void assertSameAsPython(String ocrText, String dbText, double jaccard, List<String> commonTexts) {
+        List<String> ocrWords = TextSimilarity.preprocessWords(ocrText);
+        Map<String, Integer> ids = new HashMap<>();
+        int[] ocrTokens = tokenIds(ocrWords, ids);
+        int[] dbTokens = tokenIds(TextSimilarity.preprocessWords(dbText), ids);
+
+        assertEquals(jaccard, Fingerprints.jaccard(Fingerprints.distinct(ocrTokens), 0, Fingerprints.distinct(dbTokens)));
+        assertEquals(commonTexts, TextSimilarity.findCommonText(ocrWords, ocrTokens, dbTokens, true));
+    }
+
+    private static int[] tokenIds(List<String> words, Map<String, Integer> ids) {
+        return words.stream().mapToInt(word -> ids.computeIfAbsent(word, key -> ids.size())).toArray();
+    }
+}